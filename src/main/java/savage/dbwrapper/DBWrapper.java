@@ -10,11 +10,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import savage.dbwrapper.config.DBWrapperConfig;
 import savage.dbwrapper.database.DatabaseManager;
+import savage.dbwrapper.database.ServiceOrchestrator;
+import savage.dbwrapper.database.mariadb.MariaDBConnectionPool;
 import savage.dbwrapper.database.mariadb.MariaDBManager;
+import savage.dbwrapper.database.mariadb.MariaDBQueryExecutor;
+import savage.dbwrapper.database.mariadb.MariaDBWriteBehind;
 import savage.dbwrapper.database.redis.RedisManager;
 import savage.dbwrapper.utils.ConfigLoader;
 
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class DBWrapper implements ModInitializer, PreLaunchEntrypoint {
 	public static final String MOD_ID = "dbwrapper";
@@ -25,11 +32,24 @@ public class DBWrapper implements ModInitializer, PreLaunchEntrypoint {
 	public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
 
 	private static DatabaseManager databaseManager;
+	private static RedisManager redisManager;
 	private static DBWrapperConfig config;
 	private static final Path CONFIG_DIRECTORY = FabricLoader.getInstance().getConfigDir().resolve(MOD_ID);
 	private static final Path CONFIG_FILE = CONFIG_DIRECTORY.resolve("config.json");
 	private static boolean shutdownHookRegistered = false;
-
+	// How long the shutdown hook waits for Minecraft to finish saving before stopping services itself
+	private static final long SHUTDOWN_HOOK_WAIT_SECONDS = 60;
+	private static volatile boolean serverStarted = false;
+	private static final CountDownLatch SERVER_STOPPED = new CountDownLatch(1);
+
+	// Starts, tracks and stops every enabled service
+	private static final ServiceOrchestrator SERVICES = new ServiceOrchestrator();
+
+	/**
+	 * True once every enabled service has started.
+	 * @deprecated use {@link #whenReady(String)} to wait for just the service you need
+	 */
+	@Deprecated
 	public static volatile boolean isDatabaseReady = false;
 
 	@Override
@@ -48,65 +68,45 @@ public class DBWrapper implements ModInitializer, PreLaunchEntrypoint {
 			DBWrapperCommands.register(dispatcher, config, LOGGER);
 		});
 
-		// Initialize and start databases in a background thread to avoid blocking the main thread
-		Thread startupThread = new Thread(() -> {
-			LOGGER.info("Starting DBWrapper services in background...");
-			try {
-				// Initialize database manager based on config
-				if (config.getMariadb().isEnabled()) {
-					databaseManager = new MariaDBManager();
-					((MariaDBManager) databaseManager).setConfig(config);
-					databaseManager.initialize();
-
-					// Register shutdown hook for proper cleanup
-					if (!shutdownHookRegistered) {
-						Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-							LOGGER.info("Shutdown hook triggered - cleaning up database processes");
-							if (databaseManager != null && databaseManager.isDatabaseRunning()) {
-								try {
-									databaseManager.stopDatabase();
-								} catch (Exception e) {
-									LOGGER.error("Error during shutdown hook database cleanup", e);
-								}
-							}
-						}));
-						shutdownHookRegistered = true;
-					}
-
-					if (config.isAutoStart()) {
-						startDatabaseServices();
-					}
-				}
+		// Each service installs and starts on its own thread, so the main thread isn't blocked and
+		// independent services (MariaDB and Redis share nothing) boot in parallel
+		LOGGER.info("Starting DBWrapper services in background...");
+		if (config.getMariadb().isEnabled()) {
+			MariaDBManager mariaDBManager = new MariaDBManager();
+			mariaDBManager.setConfig(config);
+			databaseManager = mariaDBManager;
+			SERVICES.register(mariaDBManager);
+		}
+		if (config.getRedis().isEnabled()) {
+			// Create separate Redis manager
+			redisManager = new RedisManager();
+			redisManager.setConfig(config);
+			SERVICES.register(redisManager);
+		}
 
-				if (config.getRedis().isEnabled()) {
-					// Create separate Redis manager
-					RedisManager redisManager = new RedisManager();
-					redisManager.setConfig(config);
-					redisManager.initialize();
-
-					// Start Redis if auto-start is enabled
-					if (config.isAutoStart()) {
-						LOGGER.info("Starting Redis database...");
-						redisManager.installDatabase();
-						redisManager.startDatabase();
-					}
+		// Register shutdown hook for proper cleanup
+		if (!shutdownHookRegistered) {
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				// Minecraft's own shutdown hook saves players in parallel with this one, so leave the services
+				// to SERVER_STOPPED and only clean up here if the server never started or stops too slowly
+				if (serverStarted && awaitServerStopped()) {
+					return;
 				}
-				
+				LOGGER.info("Shutdown hook triggered - cleaning up database processes");
+				SERVICES.stopAll();
+			}, "DBWrapper-Shutdown"));
+			shutdownHookRegistered = true;
+		}
+
+		SERVICES.whenAllReady().whenComplete((ignored, error) -> {
+			if (error == null) {
 				isDatabaseReady = true;
 				LOGGER.info("DBWrapper services started successfully!");
-				
-			} catch (Exception e) {
-				LOGGER.error("Failed to start DBWrapper services", e);
-				isDatabaseReady = false; // Ensure it stays false
+			} else if (config.isAutoStart()) {
+				LOGGER.error("Failed to start DBWrapper services", error);
 			}
-		}, "DBWrapper-Startup");
-		
-		startupThread.setDaemon(true); // Allow JVM to exit if this is the only thread left (though we want it to finish)
-		// Actually, we probably don't want it to be daemon if it's doing critical setup, 
-		// but we don't want it to hold up shutdown if it hangs.
-		// Let's keep it non-daemon for safety of installation, but main server loop will proceed anyway.
-		startupThread.setDaemon(false); 
-		startupThread.start();
+		});
+		SERVICES.startAll(config.isAutoStart());
 
 		// Register server lifecycle events
 		registerServerEvents();
@@ -134,42 +134,102 @@ public class DBWrapper implements ModInitializer, PreLaunchEntrypoint {
 		}
 	}
 
-	private void startDatabaseServices() {
-		if (databaseManager == null) {
-			LOGGER.error("No database manager initialized");
-			return;
+	private void stopDatabaseServices() {
+		SERVICES.stopAll();
+	}
+
+	private static boolean awaitServerStopped() {
+		try {
+			if (SERVER_STOPPED.await(SHUTDOWN_HOOK_WAIT_SECONDS, TimeUnit.SECONDS)) {
+				return true;
+			}
+			LOGGER.warn("Server did not stop within {} s, stopping database services from the shutdown hook", SHUTDOWN_HOOK_WAIT_SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
+		return false;
+	}
 
-		// Install database if needed
-		LOGGER.info("Installing database...");
-		databaseManager.installDatabase();
+	private void registerServerEvents() {
+		ServerLifecycleEvents.SERVER_STARTING.register(server -> serverStarted = true);
 
-		// Start database if not running
-		if (!databaseManager.isDatabaseRunning()) {
-			LOGGER.info("Starting database...");
-			databaseManager.startDatabase();
-		}
+		// Commit queued writes early so the final flush at shutdown is short
+		ServerLifecycleEvents.SERVER_STOPPING.register(server -> flushWriteBehind());
+
+		// Players are saved (and disconnect) after SERVER_STOPPING, so only stop the database once the server has stopped
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+			try {
+				stopDatabaseServices();
+				LOGGER.info("DBWrapper cleanup completed");
+			} finally {
+				SERVER_STOPPED.countDown();
+			}
+		});
 	}
 
-	private void stopDatabaseServices() {
-		if (databaseManager != null && databaseManager.isDatabaseRunning()) {
-			LOGGER.info("Stopping database...");
-			databaseManager.stopDatabase();
+	private void flushWriteBehind() {
+		if (databaseManager instanceof MariaDBManager mariaDBManager && databaseManager.isDatabaseRunning()) {
+			try {
+				mariaDBManager.getWriteBehind().flush();
+			} catch (Exception e) {
+				LOGGER.error("Failed to flush write-behind queue", e);
+			}
 		}
 	}
 
-	private void registerServerEvents() {
-		// Register server stopping event to clean up database
-		ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
-			stopDatabaseServices();
-			LOGGER.info("DBWrapper cleanup completed");
-		});
+	/**
+	 * Completes once the given service is running, so mods can start using it without waiting for the others:
+	 * {@code DBWrapper.whenReady("mariadb").thenRun(...)}. Fails if the service is disabled or could not start.
+	 * Safe to call before DBWrapper has initialized.
+	 * @param service {@code "mariadb"} or {@code "redis"}
+	 */
+	public static CompletableFuture<DatabaseManager> whenReady(String service) {
+		return SERVICES.whenReady(service);
 	}
 
 	public static DatabaseManager getDatabaseManager() {
 		return databaseManager;
 	}
 
+	/**
+	 * Shared JDBC connection pool for the managed MariaDB instance, connected to the configured database_name.
+	 * Close borrowed connections (try-with-resources) to return them.
+	 * @throws IllegalStateException if MariaDB is disabled or not running
+	 */
+	public static MariaDBConnectionPool getDataSource() {
+		if (!(databaseManager instanceof MariaDBManager mariaDBManager)) {
+			throw new IllegalStateException("MariaDB is not enabled");
+		}
+		return mariaDBManager.getConnectionPool();
+	}
+
+	/**
+	 * Runs MariaDB queries asynchronously on the shared pool. Use {@code getQueryExecutor().on(server)} to
+	 * receive results on the main thread.
+	 * @throws IllegalStateException if MariaDB is disabled or not running
+	 */
+	public static MariaDBQueryExecutor getQueryExecutor() {
+		if (!(databaseManager instanceof MariaDBManager mariaDBManager)) {
+			throw new IllegalStateException("MariaDB is not enabled");
+		}
+		return mariaDBManager.getQueryExecutor();
+	}
+
+	/**
+	 * Write-behind queue that coalesces and batches upserts (e.g. player data saves) into few commits.
+	 * @throws IllegalStateException if MariaDB is disabled or not running
+	 */
+	public static MariaDBWriteBehind getWriteBehind() {
+		if (!(databaseManager instanceof MariaDBManager mariaDBManager)) {
+			throw new IllegalStateException("MariaDB is not enabled");
+		}
+		return mariaDBManager.getWriteBehind();
+	}
+
+	public static RedisManager getRedisManager() {
+		return redisManager;
+	}
+
 	public static DBWrapperConfig getConfig() {
 		return config;
 	}
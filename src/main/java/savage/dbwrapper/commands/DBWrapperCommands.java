@@ -7,10 +7,10 @@ import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.text.Text;
 import org.slf4j.Logger;
+import savage.dbwrapper.DBWrapper;
 import savage.dbwrapper.config.DBWrapperConfig;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -36,17 +36,11 @@ public class DBWrapperCommands {
             return 0;
         }
 
-        DBWrapperConfig.MariaDBConfig mariaDBConfig = config.getMariadb();
-
-        String url = "jdbc:mariadb://localhost:" + mariaDBConfig.getPort() + "/";
-        String user = mariaDBConfig.getUsername();
-        String password = mariaDBConfig.getPassword();
-
         Connection conn = null;
         Statement stmt = null;
         try {
             source.sendFeedback(() -> Text.literal("Connecting to MariaDB..."), false);
-            conn = DriverManager.getConnection(url, user, password);
+            conn = DBWrapper.getDataSource().getConnection();
             source.sendFeedback(() -> Text.literal("Connection successful. Creating database '" + databaseName + "'..."), false);
 
             stmt = conn.createStatement();
@@ -1,6 +1,13 @@
 package savage.dbwrapper.config;
 
 import com.google.gson.annotations.SerializedName;
+import savage.dbwrapper.utils.OSUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class DBWrapperConfig {
     @SerializedName("auto_start")
@@ -63,6 +70,54 @@ public class DBWrapperConfig {
         @SerializedName("database_name")
         private String databaseName = "minecraft";
 
+        // Optional Unix domain socket path (Linux/macOS only). Empty disables it.
+        @SerializedName("unix_socket")
+        private String unixSocket = "";
+
+        // Shared JDBC pool handed out by DBWrapper.getDataSource(), connected to database_name
+        @SerializedName("pool")
+        private MariaDBPoolConfig pool = new MariaDBPoolConfig();
+
+        // DBWrapper.getWriteBehind() commits queued upserts this often, or once this many rows are queued
+        @SerializedName("write_behind_flush_interval_ms")
+        private long writeBehindFlushIntervalMs = 1000;
+
+        @SerializedName("write_behind_batch_size")
+        private int writeBehindBatchSize = 500;
+
+        // small, medium or large sizes InnoDB and threads from this machine's memory and cores; custom keeps stock settings
+        @SerializedName("tuning_profile")
+        private String tuningProfile = "medium";
+
+        // Extra [mysqld] settings for the generated my.cnf, applied on top of the profile
+        @SerializedName("tuning_overrides")
+        private Map<String, String> tuningOverrides = new LinkedHashMap<>();
+
+        // Throwaway instances: the datadir lives in memory, is cloned from a template on start, is deleted on stop,
+        // and nothing is fsynced. For servers whose data doesn't outlive the match
+        @SerializedName("ephemeral")
+        private boolean ephemeral = false;
+
+        // Where ephemeral datadirs go. Empty picks /dev/shm on Linux, otherwise the system temp directory
+        @SerializedName("ephemeral_directory")
+        private String ephemeralDirectory = "";
+
+        // Clone new datadirs from an installed and secured template, built once per MariaDB version
+        @SerializedName("datadir_template")
+        private boolean datadirTemplate = true;
+
+        // Where templates are cached. Empty uses mariadb/templates; point servers on one host at a shared directory
+        @SerializedName("template_directory")
+        private String templateDirectory = "";
+
+        // innodb_fast_shutdown for stops: 0 = slow and clean, 1 = MariaDB's default, 2 = fastest, crash recovery on next start
+        @SerializedName("innodb_fast_shutdown")
+        private int innodbFastShutdown = 1;
+
+        // How long to wait for a clean shutdown before killing the process
+        @SerializedName("shutdown_timeout_ms")
+        private long shutdownTimeoutMs = 60000;
+
         public boolean isEnabled() {
             return enabled;
         }
@@ -102,6 +157,119 @@ public class DBWrapperConfig {
         public void setDatabaseName(String databaseName) {
             this.databaseName = databaseName;
         }
+
+        public String getUnixSocket() {
+            return unixSocket;
+        }
+
+        public void setUnixSocket(String unixSocket) {
+            this.unixSocket = unixSocket;
+        }
+
+        public boolean hasUnixSocket() {
+            return unixSocket != null && !unixSocket.trim().isEmpty();
+        }
+
+        public MariaDBPoolConfig getPool() {
+            return pool;
+        }
+
+        public void setPool(MariaDBPoolConfig pool) {
+            this.pool = pool;
+        }
+
+        public long getWriteBehindFlushIntervalMs() {
+            return writeBehindFlushIntervalMs;
+        }
+
+        public void setWriteBehindFlushIntervalMs(long writeBehindFlushIntervalMs) {
+            this.writeBehindFlushIntervalMs = writeBehindFlushIntervalMs;
+        }
+
+        public int getWriteBehindBatchSize() {
+            return writeBehindBatchSize;
+        }
+
+        public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+            this.writeBehindBatchSize = writeBehindBatchSize;
+        }
+
+        public String getTuningProfile() {
+            return tuningProfile;
+        }
+
+        public void setTuningProfile(String tuningProfile) {
+            this.tuningProfile = tuningProfile;
+        }
+
+        public Map<String, String> getTuningOverrides() {
+            return tuningOverrides;
+        }
+
+        public void setTuningOverrides(Map<String, String> tuningOverrides) {
+            this.tuningOverrides = tuningOverrides;
+        }
+
+        public boolean isEphemeral() {
+            return ephemeral;
+        }
+
+        public void setEphemeral(boolean ephemeral) {
+            this.ephemeral = ephemeral;
+        }
+
+        public String getEphemeralDirectory() {
+            return ephemeralDirectory;
+        }
+
+        public void setEphemeralDirectory(String ephemeralDirectory) {
+            this.ephemeralDirectory = ephemeralDirectory;
+        }
+
+        public boolean isDatadirTemplate() {
+            return datadirTemplate;
+        }
+
+        public void setDatadirTemplate(boolean datadirTemplate) {
+            this.datadirTemplate = datadirTemplate;
+        }
+
+        public String getTemplateDirectory() {
+            return templateDirectory;
+        }
+
+        public void setTemplateDirectory(String templateDirectory) {
+            this.templateDirectory = templateDirectory;
+        }
+
+        public int getInnodbFastShutdown() {
+            return innodbFastShutdown;
+        }
+
+        public void setInnodbFastShutdown(int innodbFastShutdown) {
+            this.innodbFastShutdown = innodbFastShutdown;
+        }
+
+        public long getShutdownTimeoutMs() {
+            return shutdownTimeoutMs;
+        }
+
+        public void setShutdownTimeoutMs(long shutdownTimeoutMs) {
+            this.shutdownTimeoutMs = shutdownTimeoutMs;
+        }
+
+        /**
+         * Builds a JDBC URL for the managed instance, preferring the Unix domain socket when configured
+         * so local connections skip the TCP stack.
+         * @param database database to select, or null for none
+         */
+        public String getJdbcUrl(String database) {
+            String url = "jdbc:mariadb://localhost:" + port + "/" + (database == null ? "" : database);
+            if (hasUnixSocket() && !OSUtils.isWindows()) {
+                url += "?localSocket=" + Path.of(unixSocket).toAbsolutePath();
+            }
+            return url;
+        }
     }
 
     public static class RedisConfig {
@@ -117,6 +285,35 @@ public class DBWrapperConfig {
         @SerializedName("max_connections")
         private int maxConnections = 50;
 
+        // Optional Unix domain socket path for same-host clients. Empty disables it.
+        @SerializedName("unix_socket")
+        private String unixSocket = "";
+
+        // Clients whose unsent output breaks these limits are disconnected (0 disables a limit)
+        @SerializedName("output_buffer_limit_normal")
+        private OutputBufferLimitConfig outputBufferLimitNormal = new OutputBufferLimitConfig(0, 0, 0);
+
+        @SerializedName("output_buffer_limit_pubsub")
+        private OutputBufferLimitConfig outputBufferLimitPubsub = new OutputBufferLimitConfig(32L << 20, 8L << 20, 60);
+
+        // Named databases (SELECT) with optional per-database memory quotas, e.g. one per mod
+        @SerializedName("databases")
+        private List<RedisDatabaseConfig> databases = new ArrayList<>();
+
+        // Pool of blocking connections handed out by RedisManager.getConnectionPool()
+        @SerializedName("pool")
+        private RedisPoolConfig pool = new RedisPoolConfig();
+
+        // Memory-mapped pub/sub between instances on the same host. Empty directory uses /dev/shm when available.
+        @SerializedName("shared_memory_pubsub")
+        private boolean sharedMemoryPubsub = false;
+
+        @SerializedName("shared_memory_directory")
+        private String sharedMemoryDirectory = "";
+
+        @SerializedName("shared_memory_ring_bytes")
+        private int sharedMemoryRingBytes = 4 << 20;
+
         public boolean isEnabled() {
             return enabled;
         }
@@ -149,8 +346,307 @@ public class DBWrapperConfig {
             this.maxConnections = maxConnections;
         }
 
+        public String getUnixSocket() {
+            return unixSocket;
+        }
+
+        public void setUnixSocket(String unixSocket) {
+            this.unixSocket = unixSocket;
+        }
+
+        public boolean hasUnixSocket() {
+            return unixSocket != null && !unixSocket.trim().isEmpty();
+        }
+
+        public OutputBufferLimitConfig getOutputBufferLimitNormal() {
+            return outputBufferLimitNormal;
+        }
+
+        public void setOutputBufferLimitNormal(OutputBufferLimitConfig outputBufferLimitNormal) {
+            this.outputBufferLimitNormal = outputBufferLimitNormal;
+        }
+
+        public OutputBufferLimitConfig getOutputBufferLimitPubsub() {
+            return outputBufferLimitPubsub;
+        }
+
+        public void setOutputBufferLimitPubsub(OutputBufferLimitConfig outputBufferLimitPubsub) {
+            this.outputBufferLimitPubsub = outputBufferLimitPubsub;
+        }
+
+        public List<RedisDatabaseConfig> getDatabases() {
+            return databases;
+        }
+
+        public void setDatabases(List<RedisDatabaseConfig> databases) {
+            this.databases = databases;
+        }
+
+        public RedisPoolConfig getPool() {
+            return pool;
+        }
+
+        public void setPool(RedisPoolConfig pool) {
+            this.pool = pool;
+        }
+
+        public boolean isSharedMemoryPubsub() {
+            return sharedMemoryPubsub;
+        }
+
+        public void setSharedMemoryPubsub(boolean sharedMemoryPubsub) {
+            this.sharedMemoryPubsub = sharedMemoryPubsub;
+        }
+
+        public String getSharedMemoryDirectory() {
+            return sharedMemoryDirectory;
+        }
+
+        public void setSharedMemoryDirectory(String sharedMemoryDirectory) {
+            this.sharedMemoryDirectory = sharedMemoryDirectory;
+        }
+
+        public int getSharedMemoryRingBytes() {
+            return sharedMemoryRingBytes;
+        }
+
+        public void setSharedMemoryRingBytes(int sharedMemoryRingBytes) {
+            this.sharedMemoryRingBytes = sharedMemoryRingBytes;
+        }
+
         public boolean hasPassword() {
             return password != null && !password.trim().isEmpty();
         }
     }
+
+    public static class RedisDatabaseConfig {
+        @SerializedName("index")
+        private int index;
+
+        @SerializedName("name")
+        private String name = "";
+
+        // 0 = no quota
+        @SerializedName("max_memory_bytes")
+        private long maxMemoryBytes = 0;
+
+        // noeviction, allkeys-lru, volatile-lru, allkeys-random, volatile-random or volatile-ttl
+        @SerializedName("eviction_policy")
+        private String evictionPolicy = "noeviction";
+
+        public int getIndex() {
+            return index;
+        }
+
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public long getMaxMemoryBytes() {
+            return maxMemoryBytes;
+        }
+
+        public void setMaxMemoryBytes(long maxMemoryBytes) {
+            this.maxMemoryBytes = maxMemoryBytes;
+        }
+
+        public String getEvictionPolicy() {
+            return evictionPolicy;
+        }
+
+        public void setEvictionPolicy(String evictionPolicy) {
+            this.evictionPolicy = evictionPolicy;
+        }
+    }
+
+    public static class RedisPoolConfig {
+        @SerializedName("max_total")
+        private int maxTotal = 8;
+
+        @SerializedName("min_idle")
+        private int minIdle = 1;
+
+        @SerializedName("borrow_timeout_ms")
+        private long borrowTimeoutMs = 2000;
+
+        // Idle connections above min_idle are closed after this long (0 keeps them)
+        @SerializedName("idle_timeout_ms")
+        private long idleTimeoutMs = 60000;
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        public void setMaxTotal(int maxTotal) {
+            this.maxTotal = maxTotal;
+        }
+
+        public int getMinIdle() {
+            return minIdle;
+        }
+
+        public void setMinIdle(int minIdle) {
+            this.minIdle = minIdle;
+        }
+
+        public long getBorrowTimeoutMs() {
+            return borrowTimeoutMs;
+        }
+
+        public void setBorrowTimeoutMs(long borrowTimeoutMs) {
+            this.borrowTimeoutMs = borrowTimeoutMs;
+        }
+
+        public long getIdleTimeoutMs() {
+            return idleTimeoutMs;
+        }
+
+        public void setIdleTimeoutMs(long idleTimeoutMs) {
+            this.idleTimeoutMs = idleTimeoutMs;
+        }
+    }
+
+    public static class MariaDBPoolConfig {
+        @SerializedName("max_total")
+        private int maxTotal = 10;
+
+        @SerializedName("min_idle")
+        private int minIdle = 2;
+
+        @SerializedName("borrow_timeout_ms")
+        private long borrowTimeoutMs = 5000;
+
+        // Idle connections above min_idle are closed after this long (0 keeps them)
+        @SerializedName("idle_timeout_ms")
+        private long idleTimeoutMs = 600000;
+
+        // Connections are replaced after this long, well before the server's wait_timeout (0 disables)
+        @SerializedName("max_lifetime_ms")
+        private long maxLifetimeMs = 1800000;
+
+        // Logs a warning with the borrower's stack trace when a connection is held longer than this (0 disables)
+        @SerializedName("leak_detection_ms")
+        private long leakDetectionMs = 60000;
+
+        // Default timeout for DBWrapper.getQueryExecutor() queries, counted from submission (0 disables)
+        @SerializedName("query_timeout_ms")
+        private long queryTimeoutMs = 10000;
+
+        // Async queries beyond this many waiting or running are rejected
+        @SerializedName("max_pending_queries")
+        private int maxPendingQueries = 10000;
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        public void setMaxTotal(int maxTotal) {
+            this.maxTotal = maxTotal;
+        }
+
+        public int getMinIdle() {
+            return minIdle;
+        }
+
+        public void setMinIdle(int minIdle) {
+            this.minIdle = minIdle;
+        }
+
+        public long getBorrowTimeoutMs() {
+            return borrowTimeoutMs;
+        }
+
+        public void setBorrowTimeoutMs(long borrowTimeoutMs) {
+            this.borrowTimeoutMs = borrowTimeoutMs;
+        }
+
+        public long getIdleTimeoutMs() {
+            return idleTimeoutMs;
+        }
+
+        public void setIdleTimeoutMs(long idleTimeoutMs) {
+            this.idleTimeoutMs = idleTimeoutMs;
+        }
+
+        public long getMaxLifetimeMs() {
+            return maxLifetimeMs;
+        }
+
+        public void setMaxLifetimeMs(long maxLifetimeMs) {
+            this.maxLifetimeMs = maxLifetimeMs;
+        }
+
+        public long getLeakDetectionMs() {
+            return leakDetectionMs;
+        }
+
+        public void setLeakDetectionMs(long leakDetectionMs) {
+            this.leakDetectionMs = leakDetectionMs;
+        }
+
+        public long getQueryTimeoutMs() {
+            return queryTimeoutMs;
+        }
+
+        public void setQueryTimeoutMs(long queryTimeoutMs) {
+            this.queryTimeoutMs = queryTimeoutMs;
+        }
+
+        public int getMaxPendingQueries() {
+            return maxPendingQueries;
+        }
+
+        public void setMaxPendingQueries(int maxPendingQueries) {
+            this.maxPendingQueries = maxPendingQueries;
+        }
+    }
+
+    public static class OutputBufferLimitConfig {
+        @SerializedName("hard_limit_bytes")
+        private long hardLimitBytes;
+
+        @SerializedName("soft_limit_bytes")
+        private long softLimitBytes;
+
+        @SerializedName("soft_limit_seconds")
+        private long softLimitSeconds;
+
+        public OutputBufferLimitConfig(long hardLimitBytes, long softLimitBytes, long softLimitSeconds) {
+            this.hardLimitBytes = hardLimitBytes;
+            this.softLimitBytes = softLimitBytes;
+            this.softLimitSeconds = softLimitSeconds;
+        }
+
+        public long getHardLimitBytes() {
+            return hardLimitBytes;
+        }
+
+        public void setHardLimitBytes(long hardLimitBytes) {
+            this.hardLimitBytes = hardLimitBytes;
+        }
+
+        public long getSoftLimitBytes() {
+            return softLimitBytes;
+        }
+
+        public void setSoftLimitBytes(long softLimitBytes) {
+            this.softLimitBytes = softLimitBytes;
+        }
+
+        public long getSoftLimitSeconds() {
+            return softLimitSeconds;
+        }
+
+        public void setSoftLimitSeconds(long softLimitSeconds) {
+            this.softLimitSeconds = softLimitSeconds;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package savage.dbwrapper.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the managed services, each on its own thread as soon as the services it depends on are ready, so
+ * independent services boot in parallel. Every service publishes a readiness future under its
+ * {@link DatabaseManager#getDatabaseType() type}; mods can ask for it at any time, even before the service
+ * is registered, and it fails if the service is disabled or doesn't come up.
+ */
+public class ServiceOrchestrator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceOrchestrator.class);
+
+    private record Service(DatabaseManager manager, List<String> dependencies) {
+    }
+
+    // Registration order, which is also a valid start order since dependencies must be registered first
+    private final Map<String, Service> services = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<DatabaseManager>> readiness = new ConcurrentHashMap<>();
+    private boolean started = false;
+
+    /**
+     * Registers a service under its database type.
+     * @param dependencies types of services that must be ready before this one starts; they must already be registered
+     */
+    public synchronized void register(DatabaseManager manager, String... dependencies) {
+        if (started) {
+            throw new IllegalStateException("Services have already been started");
+        }
+        for (String dependency : dependencies) {
+            if (!services.containsKey(dependency)) {
+                throw new IllegalArgumentException(manager.getDatabaseType() + " depends on unregistered service " + dependency);
+            }
+        }
+        services.put(manager.getDatabaseType(), new Service(manager, List.of(dependencies)));
+    }
+
+    /**
+     * Completes with the service's manager once it is running, or fails if it is disabled or could not start.
+     * @param type e.g. {@code "mariadb"} or {@code "redis"}
+     */
+    public synchronized CompletableFuture<DatabaseManager> whenReady(String type) {
+        CompletableFuture<DatabaseManager> ready = readiness.computeIfAbsent(type, k -> new CompletableFuture<>());
+        if (started && !services.containsKey(type)) {
+            ready.completeExceptionally(new IllegalStateException(type + " is not enabled"));
+        }
+        // A copy, so callers can't complete or cancel the shared future
+        return ready.copy();
+    }
+
+    /**
+     * Completes once every registered service has finished starting, failing if any of them didn't come up.
+     */
+    public synchronized CompletableFuture<Void> whenAllReady() {
+        return CompletableFuture.allOf(services.keySet().stream().map(this::readinessOf).toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Initializes every service and, if {@code start} is set, installs and starts them. Returns immediately;
+     * follow progress through {@link #whenReady(String)}.
+     */
+    public synchronized void startAll(boolean start) {
+        started = true;
+        readiness.forEach((type, ready) -> {
+            if (!services.containsKey(type)) {
+                ready.completeExceptionally(new IllegalStateException(type + " is not enabled"));
+            }
+        });
+
+        for (Map.Entry<String, Service> entry : services.entrySet()) {
+            String type = entry.getKey();
+            Service service = entry.getValue();
+            CompletableFuture<DatabaseManager> ready = readinessOf(type);
+            if (!start) {
+                service.manager().initialize();
+                ready.completeExceptionally(new IllegalStateException(type + " was not started because auto_start is off"));
+                continue;
+            }
+            CompletableFuture<?>[] dependencies = service.dependencies().stream().map(this::readinessOf).toArray(CompletableFuture[]::new);
+            // Not a daemon, so an install in progress isn't cut off if the server stops meanwhile
+            Thread thread = new Thread(() -> start(type, service.manager(), dependencies, ready), "DBWrapper-Start-" + type);
+            thread.start();
+        }
+    }
+
+    private void start(String type, DatabaseManager manager, CompletableFuture<?>[] dependencies, CompletableFuture<DatabaseManager> ready) {
+        try {
+            CompletableFuture.allOf(dependencies).join();
+        } catch (CompletionException e) {
+            LOGGER.error("Not starting {}: a service it depends on failed", type);
+            ready.completeExceptionally(new IllegalStateException(type + " was not started because a dependency failed", e.getCause()));
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            LOGGER.info("Starting {}...", type);
+            manager.initialize();
+            manager.installDatabase();
+            manager.startDatabase();
+            if (!manager.isDatabaseRunning()) {
+                throw new IllegalStateException(type + " did not start");
+            }
+            LOGGER.info("{} ready in {} ms", type, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            ready.complete(manager);
+        } catch (Exception e) {
+            LOGGER.error("Failed to start {}", type, e);
+            ready.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Stops every running service, dependents before the services they depend on.
+     */
+    public void stopAll() {
+        List<Map.Entry<String, Service>> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(services.entrySet());
+        }
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            String type = entries.get(i).getKey();
+            DatabaseManager manager = entries.get(i).getValue().manager();
+            if (manager.isDatabaseRunning()) {
+                LOGGER.info("Stopping {}...", type);
+                try {
+                    manager.stopDatabase();
+                } catch (Exception e) {
+                    LOGGER.error("Failed to stop {}", type, e);
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<DatabaseManager> readinessOf(String type) {
+        return readiness.computeIfAbsent(type, k -> new CompletableFuture<>());
+    }
+}
@@ -0,0 +1,553 @@
+package savage.dbwrapper.database.mariadb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded JDBC connection pool for the managed MariaDB instance, shared by every mod on the server.
+ * Borrowing and returning a connection is lock-free unless the pool is exhausted: idle connections sit
+ * in a concurrent deque and slots are counted by a non-fair semaphore, so only callers that have to wait
+ * for a connection ever park.
+ * <p>
+ * Closing a borrowed connection returns it to the pool. Connections idle for a few seconds are validated
+ * before reuse, each is replaced after {@code maxLifetime}, and one held longer than the leak detection
+ * threshold is reported with the stack trace of the code that borrowed it. Changes to auto-commit,
+ * read-only, isolation or catalog are undone on return, rolling back any open transaction.
+ */
+public class MariaDBConnectionPool implements DataSource, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MariaDBConnectionPool.class);
+
+    // Connections idle for less than this are trusted without a validation round trip on borrow
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 5000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long MAINTENANCE_INTERVAL_MILLIS = 5000;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String catalog;
+    private final int maxTotal;
+    private final int minIdle;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final long leakDetectionMillis;
+
+    // Free connections, most recently returned first so the warm ones get reused
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    // One permit per borrowed connection; borrowers wait here when the pool is exhausted
+    private final Semaphore permits;
+    private final Set<Lease> borrowedLeases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private static class PooledConnection {
+        final Connection connection;
+        final int defaultIsolation;
+        final long expiresAt;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection connection, int defaultIsolation, long expiresAt) {
+            this.connection = connection;
+            this.defaultIsolation = defaultIsolation;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * @param url JDBC URL of the instance, including the default database
+     * @param maxLifetimeMillis connections are replaced after this long; 0 to keep them
+     * @param leakDetectionMillis report connections borrowed for longer than this; 0 to disable
+     */
+    public MariaDBConnectionPool(String url, String username, String password, int maxTotal, int minIdle,
+                                 long borrowTimeoutMillis, long idleTimeoutMillis, long maxLifetimeMillis,
+                                 long leakDetectionMillis) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxTotal = Math.max(1, maxTotal);
+        this.minIdle = Math.max(0, Math.min(minIdle, this.maxTotal));
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.leakDetectionMillis = leakDetectionMillis;
+        this.permits = new Semaphore(this.maxTotal);
+        this.catalog = catalogOf(url);
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MariaDB-Pool-Maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, MAINTENANCE_INTERVAL_MILLIS, MAINTENANCE_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens connections up to {@code minIdle} now, so the first queries after startup don't pay for the handshake.
+     */
+    public void warmUp() {
+        topUp();
+        LOGGER.info("MariaDB connection pool warmed up with {} connections", idle.size());
+    }
+
+    /**
+     * Borrows a connection, waiting up to the borrow timeout when all of them are in use.
+     * Close it (try-with-resources) to return it.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire() && !permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis + "ms waiting for a MariaDB connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a MariaDB connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (isUsable(connection)) {
+                    break;
+                }
+                destroy(connection);
+            }
+            if (connection == null) {
+                connection = create();
+            }
+            borrowed.incrementAndGet();
+            Lease lease = new Lease(connection);
+            borrowedLeases.add(lease);
+            return lease.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Not supported: every pooled connection uses the configured account.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only hands out connections for the configured user");
+    }
+
+    private boolean isUsable(PooledConnection connection) {
+        long now = System.currentTimeMillis();
+        if (isExpired(connection, now)) {
+            return false;
+        }
+        if (now - connection.lastUsed < VALIDATE_AFTER_IDLE_MILLIS) {
+            return true;
+        }
+        try {
+            if (connection.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return true;
+            }
+        } catch (SQLException ignored) {
+            // Treated as invalid
+        }
+        validationFailures.incrementAndGet();
+        return false;
+    }
+
+    private boolean isExpired(PooledConnection connection, long now) {
+        return maxLifetimeMillis > 0 && now >= connection.expiresAt;
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        try {
+            // Up to 2.5% less lifetime, so connections opened together aren't all replaced at once
+            long lifetime = maxLifetimeMillis - ThreadLocalRandom.current().nextLong(maxLifetimeMillis / 40 + 1);
+            PooledConnection pooled = new PooledConnection(connection, connection.getTransactionIsolation(),
+                System.currentTimeMillis() + lifetime);
+            created.incrementAndGet();
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private void giveBack(Lease lease) {
+        borrowedLeases.remove(lease);
+        PooledConnection connection = lease.connection;
+        if (lease.broken || closed || isExpired(connection, System.currentTimeMillis()) || isClosed(connection) || !reset(lease)) {
+            destroy(connection);
+        } else {
+            connection.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(connection);
+        }
+        permits.release();
+    }
+
+    // Puts back whatever session state the borrower changed; false if the connection can't be trusted any more
+    private boolean reset(Lease lease) {
+        if (!lease.dirty) {
+            return true;
+        }
+        Connection connection = lease.connection.connection;
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (connection.isReadOnly()) {
+                connection.setReadOnly(false);
+            }
+            if (connection.getTransactionIsolation() != lease.connection.defaultIsolation) {
+                connection.setTransactionIsolation(lease.connection.defaultIsolation);
+            }
+            if (catalog != null && !catalog.equals(connection.getCatalog())) {
+                connection.setCatalog(catalog);
+            }
+            return true;
+        } catch (SQLException e) {
+            LOGGER.debug("Could not reset pooled MariaDB connection, discarding it", e);
+            return false;
+        }
+    }
+
+    // The server or the driver may have dropped the connection without an error reaching the borrower
+    private static boolean isClosed(PooledConnection connection) {
+        try {
+            return connection.connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private void destroy(PooledConnection connection) {
+        destroyed.incrementAndGet();
+        try {
+            connection.connection.close();
+        } catch (SQLException e) {
+            LOGGER.debug("Error closing pooled MariaDB connection", e);
+        }
+    }
+
+    // Reports leaks, closes expired connections and ones idle past the timeout (down to minIdle), then tops up to minIdle
+    private void maintain() {
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (leakDetectionMillis > 0) {
+            for (Lease lease : borrowedLeases) {
+                if (!lease.leakReported && now - lease.borrowedAt > leakDetectionMillis) {
+                    lease.leakReported = true;
+                    leaks.incrementAndGet();
+                    LOGGER.warn("MariaDB connection borrowed by {} has not been returned after {}ms, possible leak",
+                        lease.borrower.getName(), now - lease.borrowedAt, lease.borrowStack);
+                }
+            }
+        }
+
+        // Oldest idle connections sit at the tail
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext()) {
+            PooledConnection connection = iterator.next();
+            boolean idleTooLong = idleTimeoutMillis > 0 && now - connection.lastUsed > idleTimeoutMillis && idle.size() > minIdle;
+            if ((idleTooLong || isExpired(connection, now)) && idle.removeFirstOccurrence(connection)) {
+                destroy(connection);
+            }
+        }
+        topUp();
+    }
+
+    private void topUp() {
+        while (!closed && idle.size() < minIdle && idle.size() + getActiveCount() < maxTotal && permits.tryAcquire()) {
+            try {
+                idle.offerLast(create());
+            } catch (SQLException e) {
+                LOGGER.warn("Failed to open pooled MariaDB connection: {}", e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // jdbc:mariadb://host:port/database?options -> database, or null if the URL names none
+    private static String catalogOf(String url) {
+        int slash = url.indexOf('/', url.indexOf("//") + 2);
+        if (slash < 0) {
+            return null;
+        }
+        int query = url.indexOf('?', slash);
+        String database = url.substring(slash + 1, query < 0 ? url.length() : query);
+        return database.isEmpty() ? null : database;
+    }
+
+    // Objects reachable from a borrowed connection that hand out their connection or statement; they are proxied so
+    // those are the lease's proxies
+    private static final List<Class<?>> CONNECTION_CHILDREN = List.of(Statement.class, PreparedStatement.class,
+        CallableStatement.class, DatabaseMetaData.class, ResultSet.class);
+
+    /**
+     * Proxy handler behind each borrowed connection: returns the connection on close or abort, refuses use after
+     * that, and notes session changes and connection-level errors. The physical connection never escapes:
+     * statements, result sets and metadata are proxied and report the proxies as their connection and statement,
+     * and {@code unwrap} only returns proxies, so driver-specific interfaces are not reachable.
+     */
+    private class Lease implements InvocationHandler {
+        private final PooledConnection connection;
+        private final Connection proxy = (Connection) Proxy.newProxyInstance(MariaDBConnectionPool.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, this);
+        private final long borrowedAt = System.currentTimeMillis();
+        private final Thread borrower = Thread.currentThread();
+        private final Throwable borrowStack = leakDetectionMillis > 0 ? new Throwable("Connection borrowed here") : null;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean dirty = false;
+        private volatile boolean broken = false;
+        private volatile boolean leakReported = false;
+
+        private Lease(PooledConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (released.compareAndSet(false, true)) {
+                        giveBack(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return released.get() || connection.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + connection.connection;
+                case "unwrap":
+                    return unwrap(proxy, (Class<?>) args[0]);
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy);
+                case "abort":
+                    // Aborted connections are never reused, but the slot is free again; a returned one is a no-op
+                    broken = true;
+                    if (released.compareAndSet(false, true)) {
+                        try {
+                            call(connection.connection, method, args);
+                        } finally {
+                            giveBack(this);
+                        }
+                    }
+                    return null;
+                case "setAutoCommit":
+                case "setReadOnly":
+                case "setTransactionIsolation":
+                case "setCatalog":
+                case "setSchema":
+                    dirty = true;
+                    break;
+                default:
+                    break;
+            }
+            if (released.get()) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+            return wrap(call(connection.connection, method, args), method.getReturnType(), proxy);
+        }
+
+        // Proxies a statement, result set or metadata object; parent is the proxy that created it
+        private Object wrap(Object result, Class<?> type, Object parent) {
+            if (result == null || !CONNECTION_CHILDREN.contains(type)) {
+                return result;
+            }
+            return Proxy.newProxyInstance(MariaDBConnectionPool.class.getClassLoader(), new Class<?>[] {type},
+                (childProxy, childMethod, childArgs) -> switch (childMethod.getName()) {
+                    case "getConnection" -> proxy;
+                    case "getStatement" -> parent instanceof Statement
+                        ? parent
+                        : wrap(call(result, childMethod, childArgs), childMethod.getReturnType(), childProxy);
+                    case "unwrap" -> unwrap(childProxy, (Class<?>) childArgs[0]);
+                    case "isWrapperFor" -> ((Class<?>) childArgs[0]).isInstance(childProxy);
+                    case "equals" -> childProxy == childArgs[0];
+                    case "hashCode" -> System.identityHashCode(childProxy);
+                    default -> wrap(call(result, childMethod, childArgs), childMethod.getReturnType(), childProxy);
+                });
+        }
+
+        private static Object unwrap(Object proxy, Class<?> iface) throws SQLException {
+            if (iface.isInstance(proxy)) {
+                return proxy;
+            }
+            throw new SQLException("Pooled MariaDB objects do not unwrap to " + iface.getName());
+        }
+
+        private Object call(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                // SQLSTATE class 08 is a connection failure; don't hand this connection out again
+                if (cause instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08")) {
+                    broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return maxTotal - permits.availablePermits();
+    }
+
+    public long getBorrowCount() {
+        return borrowed.get();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyed.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailures.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public long getLeakCount() {
+        return leaks.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = borrowed.get() + timeouts.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MariaDBConnectionPool[active=%d, idle=%d, max=%d, borrowed=%d, created=%d, destroyed=%d, "
+                + "validationFailures=%d, timeouts=%d, leaks=%d, avgWait=%.2fms, maxWait=%.2fms]",
+            getActiveCount(), getIdleCount(), maxTotal, getBorrowCount(), getCreatedCount(), getDestroyedCount(),
+            getValidationFailureCount(), getTimeoutCount(), getLeakCount(), getAverageWaitMillis(), getMaxWaitMillis());
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        // Logging goes through SLF4J
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        // Borrowers wait for borrow_timeout_ms instead
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(borrowTimeoutMillis);
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * Closes idle connections now; borrowed ones are closed as they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        maintenance.shutdownNow();
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            destroy(connection);
+        }
+    }
+}
@@ -14,12 +14,23 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class MariaDBManager implements DatabaseManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(MariaDBManager.class);
 
+    private static final long READY_TIMEOUT_MILLIS = 20000;
+    private static final long MIN_READY_PROBE_MILLIS = 25;
+    private static final long MAX_READY_PROBE_MILLIS = 1000;
+    private static final long SHUTDOWN_PROGRESS_INTERVAL_MILLIS = 5000;
+
     private DBWrapperConfig config;
     private final Path configDirectory;
     private final Path mariaDBDirectory;
@@ -27,6 +38,14 @@ public class MariaDBManager implements DatabaseManager {
     private final Path dataDirectory;
 
     private Process databaseProcess;
+    private volatile MariaDBConnectionPool connectionPool;
+    private volatile MariaDBQueryExecutor queryExecutor;
+    private volatile MariaDBWriteBehind writeBehind;
+    private MariaDBTemplate template;
+
+    // Boot-to-ready breakdown of the last start, in milliseconds
+    private final Map<String, Long> startupTimings = Collections.synchronizedMap(new LinkedHashMap<>());
+    private long bootStartNanos;
 
     public MariaDBManager() {
         this.configDirectory = FabricLoader.getInstance().getConfigDir().resolve("dbwrapper");
@@ -56,80 +75,148 @@ public class MariaDBManager implements DatabaseManager {
 
     @Override
     public void installDatabase() {
+        bootStartNanos = System.nanoTime();
+        startupTimings.clear();
         // Delegate to BinaryManager for download/extraction
         try {
+            long phaseStart = System.nanoTime();
             BinaryManager.setupMariaDB(configDirectory, binDirectory);
-            
-            // Initialize data directory if needed (mysql_install_db)
-            Path dataDir = binDirectory.resolve("data");
-            if (!Files.exists(dataDir) || isDataDirEmpty(dataDir)) {
-                LOGGER.info("Initializing MariaDB data directory...");
-                Files.createDirectories(dataDir);
-                
-                String installDbDataBinary = OSUtils.isWindows() ? "mysql_install_db.exe" : "mariadb-install-db";
-                Path installDbPath = binDirectory.resolve("bin/" + installDbDataBinary);
-                
-                // Fallback: Check older names vs newer names
-                if (!Files.exists(installDbPath) && OSUtils.isLinux()) {
-                     // Try scripts/mysql_install_db
-                     installDbPath = binDirectory.resolve("scripts/mysql_install_db");
-                     if (!Files.exists(installDbPath)) {
-                         // Try bin/mysql_install_db
-                         installDbPath = binDirectory.resolve("bin/mysql_install_db");
-                     }
-                }
-                
-                if (!Files.exists(installDbPath)) {
-                    throw new IOException("Could not find install DB binary. Checked: " + installDbDataBinary);
-                }
+            recordTiming("binaries", phaseStart);
 
-                List<String> command = new ArrayList<>();
-                command.add(installDbPath.toAbsolutePath().toString());
-                command.add("--datadir=" + dataDir.toAbsolutePath().toString());
-                
-                // CRITICAL: Explicitly set basedir so it can find plugins (InnoDB) and share (english messages)
-                // The binDirectory acts as the "root" of extraction
-                // On Windows, mysql_install_db.exe does not support --basedir and finds things relative to itself
-                if (!OSUtils.isWindows()) {
-                    command.add("--basedir=" + binDirectory.toAbsolutePath().toString());
-                }
-                
-                // Redirect error to allow debugging
-                // command.add("--log-error=" + binDirectory.resolve("install_error.log").toString());
-
-                ProcessBuilder pb = new ProcessBuilder(command);
-                pb.directory(binDirectory.toFile());
-                
-                LOGGER.info("Running installation command: " + String.join(" ", command));
-
-                Process process = pb.start();
-                ProcessUtils.logProcessOutput(process, "MariaDB-Install");
-                
-                int exitCode = process.waitFor();
-                if (exitCode != 0) {
-                    LOGGER.error("MariaDB init failed with exit code: " + exitCode);
-                    // Cleanup failed install to prevent corruption issues on retry
-                    LOGGER.warn("Cleaning up corrupt data directory...");
-                    try {
-                        Files.walk(dataDir)
-                            .sorted((a, b) -> b.compareTo(a)) // Delete leaves first
-                            .forEach(p -> {
-                                try { Files.delete(p); } catch (IOException ignored) {}
-                            });
-                    } catch (Exception ex) {
-                        LOGGER.error("Failed to cleanup data dir", ex);
-                    }
-                    throw new IOException("MariaDB failed to initialize data directory");
-                } else {
-                    LOGGER.info("MariaDB data initialized successfully!");
-                }
+            phaseStart = System.nanoTime();
+            Path dataDir = getDataDirectory();
+            if (config.getMariadb().isEphemeral()) {
+                // Left behind by a run that didn't stop cleanly
+                MariaDBTemplate.deleteDirectory(dataDir);
             }
+            if (!Files.exists(dataDir) || isDataDirEmpty(dataDir)) {
+                prepareDataDirectory(dataDir);
+            }
+            recordTiming("datadir", phaseStart);
             
         } catch (IOException | InterruptedException e) {
             LOGGER.error("Failed to install MariaDB", e);
         }
     }
-    
+
+    // Clones the golden template when enabled, which is far quicker than running the installer
+    private void prepareDataDirectory(Path dataDir) throws IOException, InterruptedException {
+        if (config.getMariadb().isDatadirTemplate()) {
+            MariaDBTemplate golden = getTemplate();
+            if (golden != null) {
+                try {
+                    golden.cloneInto(dataDir, this::initializeDataDirectory);
+                    return;
+                } catch (IOException e) {
+                    LOGGER.warn("Could not clone MariaDB datadir template, running the installer instead", e);
+                    MariaDBTemplate.deleteDirectory(dataDir);
+                }
+            }
+        }
+        initializeDataDirectory(dataDir);
+    }
+
+    private MariaDBTemplate getTemplate() {
+        if (template == null) {
+            Path serverBinary = findServerBinary();
+            if (serverBinary == null) {
+                return null;
+            }
+            String directory = config.getMariadb().getTemplateDirectory();
+            Path cacheDirectory = directory == null || directory.isBlank() ? mariaDBDirectory.resolve("templates") : Path.of(directory);
+            template = new MariaDBTemplate(cacheDirectory, serverBinary, binDirectory);
+        }
+        return template;
+    }
+
+    private void initializeDataDirectory(Path dataDir) throws IOException, InterruptedException {
+        LOGGER.info("Initializing MariaDB data directory...");
+        Files.createDirectories(dataDir);
+        
+        String installDbDataBinary = OSUtils.isWindows() ? "mysql_install_db.exe" : "mariadb-install-db";
+        Path installDbPath = binDirectory.resolve("bin/" + installDbDataBinary);
+        
+        // Fallback: Check older names vs newer names
+        if (!Files.exists(installDbPath) && OSUtils.isLinux()) {
+             // Try scripts/mysql_install_db
+             installDbPath = binDirectory.resolve("scripts/mysql_install_db");
+             if (!Files.exists(installDbPath)) {
+                 // Try bin/mysql_install_db
+                 installDbPath = binDirectory.resolve("bin/mysql_install_db");
+             }
+        }
+        
+        if (!Files.exists(installDbPath)) {
+            throw new IOException("Could not find install DB binary. Checked: " + installDbDataBinary);
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(installDbPath.toAbsolutePath().toString());
+        command.add("--datadir=" + dataDir.toAbsolutePath().toString());
+        
+        // CRITICAL: Explicitly set basedir so it can find plugins (InnoDB) and share (english messages)
+        // The binDirectory acts as the "root" of extraction
+        // On Windows, mysql_install_db.exe does not support --basedir and finds things relative to itself
+        if (!OSUtils.isWindows()) {
+            command.add("--basedir=" + binDirectory.toAbsolutePath().toString());
+            // Otherwise root can only log in over the unix socket as the OS root user, and secureDatabase can't reach it.
+            // This also creates passwordless root@<hostname> and friends, which secureAccounts locks down
+            command.add("--auth-root-authentication-method=normal");
+            command.add("--skip-auth-anonymous-user");
+        }
+        
+        // Redirect error to allow debugging
+        // command.add("--log-error=" + binDirectory.resolve("install_error.log").toString());
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(binDirectory.toFile());
+        
+        LOGGER.info("Running installation command: " + String.join(" ", command));
+
+        Process process = pb.start();
+        ProcessUtils.logProcessOutput(process, "MariaDB-Install");
+        
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            LOGGER.error("MariaDB init failed with exit code: " + exitCode);
+            // Cleanup failed install to prevent corruption issues on retry
+            LOGGER.warn("Cleaning up corrupt data directory...");
+            try {
+                Files.walk(dataDir)
+                    .sorted((a, b) -> b.compareTo(a)) // Delete leaves first
+                    .forEach(p -> {
+                        try { Files.delete(p); } catch (IOException ignored) {}
+                    });
+            } catch (Exception ex) {
+                LOGGER.error("Failed to cleanup data dir", ex);
+            }
+            throw new IOException("MariaDB failed to initialize data directory");
+        } else {
+            LOGGER.info("MariaDB data initialized successfully!");
+        }
+    }
+
+    /**
+     * Where mariadbd keeps its data: {@code bin/data} normally, or a directory in memory when ephemeral.
+     */
+    private Path getDataDirectory() {
+        DBWrapperConfig.MariaDBConfig mariadb = config.getMariadb();
+        if (!mariadb.isEphemeral()) {
+            return binDirectory.resolve("data");
+        }
+        Path base;
+        if (mariadb.getEphemeralDirectory() != null && !mariadb.getEphemeralDirectory().isBlank()) {
+            base = Path.of(mariadb.getEphemeralDirectory());
+        } else if (OSUtils.isLinux() && Files.isDirectory(Path.of("/dev/shm")) && Files.isWritable(Path.of("/dev/shm"))) {
+            base = Path.of("/dev/shm");
+        } else {
+            // Usually on disk, but still thrown away and never fsynced
+            base = Path.of(System.getProperty("java.io.tmpdir"));
+        }
+        // One per port, so a crashed run's datadir is reused rather than leaking memory
+        return base.resolve("dbwrapper-mariadb-" + mariadb.getPort()).toAbsolutePath();
+    }
+
     private boolean isDataDirEmpty(Path dataDir) {
         try (java.util.stream.Stream<Path> entries = Files.list(dataDir)) {
             return !entries.findAny().isPresent();
@@ -148,26 +235,28 @@ public class MariaDBManager implements DatabaseManager {
         try {
             LOGGER.info("Starting MariaDB...");
 
-            // Determine binary name
-            String binaryName = OSUtils.getExecutableName("mysqld");
-            Path binaryPath = binDirectory.resolve("bin").resolve(binaryName);
-            
-            // Linux Fallback: newer versions use 'mariadbd'
-            if (!Files.exists(binaryPath) && OSUtils.isLinux()) {
-                 binaryPath = binDirectory.resolve("bin/mariadbd");
+            if (bootStartNanos == 0) {
+                bootStartNanos = System.nanoTime();
             }
-
-            if (!Files.exists(binaryPath)) {
-                 LOGGER.error("Could not find MariaDB binary at {}", binaryPath);
+            Path binaryPath = findServerBinary();
+            if (binaryPath == null) {
                  return;
             }
 
+            Path defaultsFile = writeDefaultsFile();
+
             List<String> command = new ArrayList<>();
             command.add(binaryPath.toAbsolutePath().toString());
-            command.add("--no-defaults");
+            // Must come first; also keeps MariaDB from reading any system-wide my.cnf, as --no-defaults did
+            command.add("--defaults-file=" + defaultsFile.toAbsolutePath());
             command.add("--console");
             command.add("--port=" + config.getMariadb().getPort());
-            command.add("--datadir=" + binDirectory.resolve("data").toAbsolutePath().toString());
+            command.add("--datadir=" + getDataDirectory().toAbsolutePath().toString());
+
+            // Optional unix socket for same-host clients (on Windows --socket names a pipe instead, so skip it)
+            if (config.getMariadb().hasUnixSocket() && !OSUtils.isWindows()) {
+                command.add("--socket=" + Path.of(config.getMariadb().getUnixSocket()).toAbsolutePath());
+            }
             
             // Only add basedir if strictly necessary or on Windows to avoid path issues
             // command.add("--basedir=" + binDirectory.toAbsolutePath().toString());
@@ -175,16 +264,32 @@ public class MariaDBManager implements DatabaseManager {
             ProcessBuilder processBuilder = new ProcessBuilder(command);
             processBuilder.directory(binDirectory.toFile());
 
+            long phaseStart = System.nanoTime();
             databaseProcess = processBuilder.start();
-            ProcessUtils.logProcessOutput(databaseProcess, "MariaDB");
+            // mariadbd logs this once it has finished recovery and is listening
+            CompletableFuture<Void> readyLine = new CompletableFuture<>();
+            ProcessUtils.logProcessOutput(databaseProcess, "MariaDB", line -> {
+                if (line.contains("ready for connections")) {
+                    readyLine.complete(null);
+                }
+            });
 
             // MariaDB is a long-running process, so we can't wait for it to complete
             // Instead, we'll consider it started immediately and let it run, BUT we will wait for it to accept connections
             LOGGER.info("MariaDB process started. Waiting for connection...");
             
-            if (waitForReady()) {
+            if (waitForReady(readyLine)) {
+                recordTiming("server", phaseStart);
                 LOGGER.info("MariaDB started successfully on port {}", config.getMariadb().getPort());
+                phaseStart = System.nanoTime();
                 secureDatabase();
+                recordTiming("secure", phaseStart);
+                phaseStart = System.nanoTime();
+                startConnectionPool();
+                recordTiming("pool", phaseStart);
+                startupTimings.put("total", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bootStartNanos));
+                LOGGER.info("MariaDB ready in {} ms {}", startupTimings.get("total"), startupTimings);
+                bootStartNanos = 0;
             } else {
                 LOGGER.error("MariaDB failed to start (timeout exceeded)");
                 stopDatabase();
@@ -194,110 +299,339 @@ public class MariaDBManager implements DatabaseManager {
         }
     }
     
+    private Path findServerBinary() {
+        // Determine binary name
+        String binaryName = OSUtils.getExecutableName("mysqld");
+        Path binaryPath = binDirectory.resolve("bin").resolve(binaryName);
+
+        // Linux Fallback: newer versions use 'mariadbd'
+        if (!Files.exists(binaryPath) && OSUtils.isLinux()) {
+             binaryPath = binDirectory.resolve("bin/mariadbd");
+        }
+
+        if (!Files.exists(binaryPath)) {
+             LOGGER.error("Could not find MariaDB binary at {}", binaryPath);
+             return null;
+        }
+        return binaryPath;
+    }
+
+    // Generates my.cnf from the tuning profile so InnoDB is sized for this machine instead of MariaDB's stock defaults
+    private Path writeDefaultsFile() throws IOException {
+        DBWrapperConfig.MariaDBConfig mariadb = config.getMariadb();
+        MariaDBTuning.Profile profile = MariaDBTuning.Profile.byName(mariadb.getTuningProfile());
+        if (profile == null) {
+            LOGGER.warn("Unknown MariaDB tuning_profile '{}', using medium", mariadb.getTuningProfile());
+            profile = MariaDBTuning.Profile.MEDIUM;
+        }
+        MariaDBTuning tuning = MariaDBTuning.forHost(profile, mariadb.isEphemeral(), mariadb.getTuningOverrides());
+        Path defaultsFile = mariaDBDirectory.resolve("my.cnf");
+        tuning.writeDefaultsFile(defaultsFile);
+        LOGGER.info("MariaDB tuning: {}", tuning);
+        return defaultsFile;
+    }
+
     private void secureDatabase() {
-        String url = "jdbc:mariadb://localhost:" + config.getMariadb().getPort() + "/";
+        String url = config.getMariadb().getJdbcUrl(null);
         String username = "root";
         String password = config.getMariadb().getPassword();
         
         // 1. Try connecting with configured password (happy path)
         try (java.sql.Connection conn = java.sql.DriverManager.getConnection(url, username, password)) {
+            // Datadirs installed by older versions may still have passwordless root rows for other hosts
+            try (java.sql.Statement stmt = conn.createStatement()) {
+                secureAccounts(stmt, password);
+            } catch (java.sql.SQLException e) {
+                LOGGER.warn("Could not lock down MariaDB root and anonymous accounts", e);
+            }
             LOGGER.info("MariaDB already secured with configured password.");
             return;
         } catch (java.sql.SQLException ignored) {
             // Password mismatch? Try empty password (fresh install)
         }
         
-        // 2. Try connecting with no password
-        try (java.sql.Connection conn = java.sql.DriverManager.getConnection(url, username, "")) {
-            LOGGER.info("Detected fresh MariaDB install. Securing root account...");
-            
-            try (java.sql.Statement stmt = conn.createStatement()) {
-                // Set the password for root
-                // Use 'Access Denied' safe query
-                stmt.execute("ALTER USER 'root'@'localhost' IDENTIFIED BY '" + password + "'");
-                stmt.execute("FLUSH PRIVILEGES");
-                LOGGER.info("Successfully secured MariaDB root account!");
+        // 2. Try the template's password (datadir cloned from the template), then no password (fresh install)
+        List<String> initialPasswords = new ArrayList<>();
+        MariaDBTemplate cloneSource = getTemplate();
+        String templatePassword = cloneSource != null ? cloneSource.getRootPassword() : null;
+        if (templatePassword != null) {
+            initialPasswords.add(templatePassword);
+        }
+        initialPasswords.add("");
+        java.sql.SQLException lastError = null;
+        for (String initialPassword : initialPasswords) {
+            try (java.sql.Connection conn = java.sql.DriverManager.getConnection(url, username, initialPassword)) {
+                LOGGER.info("Detected fresh MariaDB install. Securing root account...");
+
+                try (java.sql.Statement stmt = conn.createStatement()) {
+                    secureAccounts(stmt, password);
+                    LOGGER.info("Successfully secured MariaDB root account!");
+                }
+                return;
+            } catch (java.sql.SQLException e) {
+                lastError = e;
             }
-        } catch (java.sql.SQLException e) {
-            LOGGER.error("Failed to secure MariaDB. Could not connect with config password OR empty password.", e);
         }
+        LOGGER.error("Failed to secure MariaDB. Could not connect with config password, template password OR empty password.", lastError);
     }
 
-    private boolean waitForReady() {
-        long startTime = System.currentTimeMillis();
-        long timeout = 20000; // 20 seconds
-        
-        while (System.currentTimeMillis() - startTime < timeout) {
-            // Use JDBC to check readiness instead of raw socket, simpler usage of existing libs
-            try (java.net.Socket ignored = new java.net.Socket("localhost", config.getMariadb().getPort())) {
-                return true;
-            } catch (IOException e) {
-                // Wait and retry
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                    return false;
+    /**
+     * Sets the password on every root account, whatever host it is for, and drops anonymous accounts.
+     * The installer creates root for localhost, 127.0.0.1, ::1 and the machine's hostname, all without a password.
+     */
+    static void secureAccounts(java.sql.Statement stmt, String password) throws java.sql.SQLException {
+        List<String[]> accounts = new ArrayList<>();
+        try (java.sql.ResultSet rs = stmt.executeQuery("SELECT User, Host FROM mysql.user WHERE User IN ('root', '')")) {
+            while (rs.next()) {
+                accounts.add(new String[] {rs.getString(1), rs.getString(2)});
+            }
+        }
+        String escapedPassword = password.replace("\\", "\\\\").replace("'", "''");
+        for (String[] account : accounts) {
+            String user = "'" + account[0] + "'@'" + account[1].replace("\\", "\\\\").replace("'", "''") + "'";
+            if (account[0].isEmpty()) {
+                stmt.execute("DROP USER " + user);
+            } else {
+                stmt.execute("ALTER USER " + user + " IDENTIFIED BY '" + escapedPassword + "'");
+            }
+        }
+        stmt.execute("FLUSH PRIVILEGES");
+    }
+
+    private void recordTiming(String phase, long phaseStartNanos) {
+        startupTimings.put(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStartNanos));
+    }
+
+    /**
+     * How long each phase of the last start took, in milliseconds: binaries, datadir (install or template
+     * clone), server (process start until it accepts connections), secure, pool and total.
+     */
+    public Map<String, Long> getStartupTimings() {
+        synchronized (startupTimings) {
+            return new LinkedHashMap<>(startupTimings);
+        }
+    }
+
+    private void startConnectionPool() {
+        DBWrapperConfig.MariaDBConfig mariadb = config.getMariadb();
+        String database = mariadb.getDatabaseName();
+        // The pool's connections default to database_name, so make sure it exists
+        if (database != null && !database.isBlank()) {
+            try (java.sql.Connection conn = java.sql.DriverManager.getConnection(mariadb.getJdbcUrl(null), mariadb.getUsername(), mariadb.getPassword());
+                 java.sql.Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE DATABASE IF NOT EXISTS `" + database.replace("`", "``") + "`");
+            } catch (java.sql.SQLException e) {
+                LOGGER.error("Failed to create database '{}', not starting the connection pool", database, e);
+                return;
+            }
+        }
+
+        DBWrapperConfig.MariaDBPoolConfig pool = mariadb.getPool();
+        connectionPool = new MariaDBConnectionPool(mariadb.getJdbcUrl(database), mariadb.getUsername(), mariadb.getPassword(),
+            pool.getMaxTotal(), pool.getMinIdle(), pool.getBorrowTimeoutMs(), pool.getIdleTimeoutMs(),
+            pool.getMaxLifetimeMs(), pool.getLeakDetectionMs());
+        connectionPool.warmUp();
+        queryExecutor = new MariaDBQueryExecutor(connectionPool, pool.getQueryTimeoutMs(), pool.getMaxPendingQueries());
+        writeBehind = new MariaDBWriteBehind(connectionPool, mariadb.getWriteBehindFlushIntervalMs(), mariadb.getWriteBehindBatchSize());
+    }
+
+    /**
+     * Shared connection pool for the managed instance, connected to {@code database_name}.
+     * @throws IllegalStateException if MariaDB is not running
+     */
+    public MariaDBConnectionPool getConnectionPool() {
+        MariaDBConnectionPool pool = connectionPool;
+        if (pool == null) {
+            throw new IllegalStateException("MariaDB is not running");
+        }
+        return pool;
+    }
+
+    /**
+     * Runs queries on virtual threads over the connection pool, keeping JDBC off the server thread.
+     * @throws IllegalStateException if MariaDB is not running
+     */
+    public MariaDBQueryExecutor getQueryExecutor() {
+        MariaDBQueryExecutor executor = queryExecutor;
+        if (executor == null) {
+            throw new IllegalStateException("MariaDB is not running");
+        }
+        return executor;
+    }
+
+    /**
+     * Batches upserts from every mod into few commits; flushed on shutdown before MariaDB stops.
+     * @throws IllegalStateException if MariaDB is not running
+     */
+    public MariaDBWriteBehind getWriteBehind() {
+        MariaDBWriteBehind queue = writeBehind;
+        if (queue == null) {
+            throw new IllegalStateException("MariaDB is not running");
+        }
+        return queue;
+    }
+
+    /**
+     * Waits until MariaDB answers a JDBC handshake. Probes are made as soon as the server logs that it is
+     * ready for connections, and otherwise with exponential backoff in case that line never shows up.
+     */
+    private boolean waitForReady(CompletableFuture<Void> readyLine) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(READY_TIMEOUT_MILLIS);
+        long probeDelay = MIN_READY_PROBE_MILLIS;
+
+        while (System.nanoTime() < deadline) {
+            try {
+                if (readyLine.isDone()) {
+                    Thread.sleep(probeDelay);
+                } else {
+                    readyLine.get(probeDelay, TimeUnit.MILLISECONDS);
                 }
+            } catch (TimeoutException | ExecutionException ignored) {
+                // Probe anyway
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            probeDelay = Math.min(probeDelay * 2, MAX_READY_PROBE_MILLIS);
+
+            if (!databaseProcess.isAlive()) {
+                LOGGER.error("MariaDB exited during startup with code {}", databaseProcess.exitValue());
+                return false;
+            }
+            if (acceptsConnections()) {
+                return true;
             }
         }
         return false;
     }
 
+    // A completed handshake, even one that is refused for the password, means the server is ready for queries
+    private boolean acceptsConnections() {
+        DBWrapperConfig.MariaDBConfig mariadb = config.getMariadb();
+        try (java.sql.Connection ignored = java.sql.DriverManager.getConnection(mariadb.getJdbcUrl(null), mariadb.getUsername(), mariadb.getPassword())) {
+            return true;
+        } catch (java.sql.SQLException e) {
+            // 28000: access denied, i.e. not secured yet
+            return e.getSQLState() != null && e.getSQLState().startsWith("28");
+        }
+    }
+
     @Override
-    public void stopDatabase() {
+    public synchronized void stopDatabase() {
+        // The SERVER_STOPPED handler and the JVM shutdown hook can both get here; the second call finds nothing to stop
+        if (databaseProcess == null && connectionPool == null && writeBehind == null && queryExecutor == null) {
+            return;
+        }
+        long stopStart = System.nanoTime();
+        Map<String, Long> timings = new LinkedHashMap<>();
+
+        // Commit queued writes, let queued queries finish and close pooled connections before the server goes away under them
+        MariaDBWriteBehind queue = writeBehind;
+        if (queue != null) {
+            writeBehind = null;
+            queue.close();
+            LOGGER.info("Closed {}", queue);
+        }
+        MariaDBQueryExecutor executor = queryExecutor;
+        if (executor != null) {
+            queryExecutor = null;
+            LOGGER.info("Closing {}", executor);
+            executor.close();
+        }
+        timings.put("services", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stopStart));
+
+        MariaDBConnectionPool pool = connectionPool;
+        connectionPool = null;
+        Process process = databaseProcess;
         try {
-            String adminBinary = OSUtils.getExecutableName("mysqladmin");
-            Path adminPath = binDirectory.resolve("bin").resolve(adminBinary);
-            
-            // Linux fallback: check for mariadb-admin
-            if (!Files.exists(adminPath) && OSUtils.isLinux()) {
-                adminPath = binDirectory.resolve("bin/mariadb-admin");
-            }
-            
-            if (!Files.exists(adminPath)) {
-                LOGGER.error("Could not find MariaDB admin binary. Tried: {} and mariadb-admin", adminBinary);
-                // Don't return, as we still want to try forcibly killing the process in the finally block
-            } else {
-                ProcessBuilder processBuilder = new ProcessBuilder(
-                    adminPath.toAbsolutePath().toString(),
-                    "shutdown",
-                    "--user=" + config.getMariadb().getUsername(),
-                    "--password=" + config.getMariadb().getPassword(),
-                    "--port=" + config.getMariadb().getPort()
-                    // "--socket=..." might be needed on Linux if we used unix sockets, but we use TCP
-                );
-    
-                processBuilder.directory(binDirectory.toFile());
-                Process shutdownProcess = processBuilder.start();
-    
-                // Wait for shutdown to complete
-                if (shutdownProcess.waitFor(10, TimeUnit.SECONDS)) {
-                    LOGGER.info("MariaDB stopped successfully");
-                } else {
-                    LOGGER.error("MariaDB shutdown timed out");
+            if (process != null && process.isAlive()) {
+                long phaseStart = System.nanoTime();
+                if (config.getMariadb().isEphemeral()) {
+                    // The datadir is deleted below, so there is nothing worth shutting down cleanly for
+                    process.destroyForcibly();
+                } else if (!requestShutdown(pool)) {
+                    // SIGTERM also shuts mariadbd down cleanly; on Windows this is a hard kill
+                    process.destroy();
+                }
+                timings.put("request", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStart));
+                closePool(pool);
+                pool = null;
+
+                phaseStart = System.nanoTime();
+                if (!waitForExit(process, config.getMariadb().getShutdownTimeoutMs())) {
+                    LOGGER.error("MariaDB did not shut down within {} ms, killing it", config.getMariadb().getShutdownTimeoutMs());
+                    process.destroyForcibly();
+                    process.waitFor(5, TimeUnit.SECONDS);
                 }
+                timings.put("exit", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStart));
             }
-        } catch (IOException | InterruptedException e) {
-            LOGGER.error("Failed to stop MariaDB", e);
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted while stopping MariaDB, killing it", e);
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
         } finally {
-            // More aggressive process cleanup
-            if (databaseProcess != null) {
+            closePool(pool);
+            databaseProcess = null;
+            if (config.getMariadb().isEphemeral()) {
                 try {
-                    // Try graceful shutdown first
-                    databaseProcess.destroy();
-                    if (!databaseProcess.waitFor(5, TimeUnit.SECONDS)) {
-                        // Force kill if graceful shutdown fails
-                        databaseProcess.destroyForcibly();
-                    }
-                } catch (InterruptedException e) {
-                    LOGGER.error("Interrupted while destroying MariaDB process", e);
-                    Thread.currentThread().interrupt();
-                } finally {
-                    databaseProcess = null;
+                    MariaDBTemplate.deleteDirectory(getDataDirectory());
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to delete ephemeral MariaDB datadir", e);
                 }
             }
         }
+        timings.put("total", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stopStart));
+        LOGGER.info("MariaDB stopped in {} ms {}", timings.get("total"), timings);
+    }
+
+    /**
+     * Asks the server to shut down with a SQL {@code SHUTDOWN}, over a pooled connection when there is one.
+     * Unlike mysqladmin this needs no extra process and keeps the password off the command line.
+     * @return whether the server accepted the request
+     */
+    private boolean requestShutdown(MariaDBConnectionPool pool) {
+        DBWrapperConfig.MariaDBConfig mariadb = config.getMariadb();
+        int fastShutdown = Math.max(0, Math.min(3, mariadb.getInnodbFastShutdown()));
+        try (java.sql.Connection conn = pool != null ? pool.getConnection()
+                 : java.sql.DriverManager.getConnection(mariadb.getJdbcUrl(null), mariadb.getUsername(), mariadb.getPassword());
+             java.sql.Statement stmt = conn.createStatement()) {
+            stmt.execute("SET GLOBAL innodb_fast_shutdown = " + fastShutdown);
+            try {
+                stmt.execute("SHUTDOWN");
+            } catch (java.sql.SQLException e) {
+                // The server may drop the connection before acknowledging
+                LOGGER.debug("SHUTDOWN did not complete cleanly on the client side", e);
+            }
+            LOGGER.info("Requested MariaDB shutdown (innodb_fast_shutdown={})", fastShutdown);
+            return true;
+        } catch (java.sql.SQLException e) {
+            LOGGER.warn("Could not request MariaDB shutdown over JDBC: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    // Waits for the process to exit, logging progress so a slow shutdown doesn't look like a hang
+    private static boolean waitForExit(Process process, long timeoutMillis) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            if (process.waitFor(Math.min(remaining, SHUTDOWN_PROGRESS_INTERVAL_MILLIS), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            LOGGER.info("Waiting for MariaDB to finish shutting down ({} s so far)...",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+        }
+    }
+
+    private static void closePool(MariaDBConnectionPool pool) {
+        if (pool != null) {
+            LOGGER.info("Closing {}", pool);
+            pool.close();
+        }
     }
 
     @Override
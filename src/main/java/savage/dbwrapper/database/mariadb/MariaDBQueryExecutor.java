@@ -0,0 +1,329 @@
+package savage.dbwrapper.database.mariadb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs JDBC work against the {@link MariaDBConnectionPool} off the calling thread, so a slow query never
+ * stalls the server tick. Each query runs on its own virtual thread; at most as many run at once as the
+ * pool has connections, and the rest wait in line without holding a platform thread.
+ * <p>
+ * Every query has a timeout (the configured default unless one is given). When it expires, or the returned
+ * future is cancelled, the statement is cancelled on the server and the future fails. Futures complete on
+ * the query's virtual thread; use {@link #on(Executor)} with the Minecraft server to get them completed on
+ * the main thread instead.
+ */
+public class MariaDBQueryExecutor implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MariaDBQueryExecutor.class);
+
+    private static final long SHUTDOWN_GRACE_MILLIS = 5000;
+
+    @FunctionalInterface
+    public interface ResultSetMapper<T> {
+        T map(ResultSet resultSet) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface ConnectionCallback<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    private final MariaDBConnectionPool pool;
+    private final ExecutorService executor;
+    // One permit per connection, so queued queries wait here rather than timing out inside the pool
+    private final Semaphore running;
+    private final long defaultTimeoutMillis;
+    private final int maxPending;
+    // Where returned futures complete; null for the query thread
+    private final Executor completionExecutor;
+
+    private final AtomicInteger pending;
+    private final AtomicLong submitted;
+    private final AtomicLong completed;
+    private final AtomicLong failed;
+    private final AtomicLong timedOut;
+
+    /**
+     * @param defaultTimeoutMillis timeout for queries that don't set one, counted from submission
+     * @param maxPending queries beyond this many queued or running are rejected
+     */
+    public MariaDBQueryExecutor(MariaDBConnectionPool pool, long defaultTimeoutMillis, int maxPending) {
+        this.pool = pool;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("MariaDB-Query-", 0).factory());
+        this.running = new Semaphore(pool.getMaxTotal(), true);
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.maxPending = Math.max(1, maxPending);
+        this.completionExecutor = null;
+        this.pending = new AtomicInteger();
+        this.submitted = new AtomicLong();
+        this.completed = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.timedOut = new AtomicLong();
+    }
+
+    // View sharing everything but the completion executor
+    private MariaDBQueryExecutor(MariaDBQueryExecutor parent, Executor completionExecutor) {
+        this.pool = parent.pool;
+        this.executor = parent.executor;
+        this.running = parent.running;
+        this.defaultTimeoutMillis = parent.defaultTimeoutMillis;
+        this.maxPending = parent.maxPending;
+        this.completionExecutor = completionExecutor;
+        this.pending = parent.pending;
+        this.submitted = parent.submitted;
+        this.completed = parent.completed;
+        this.failed = parent.failed;
+        this.timedOut = parent.timedOut;
+    }
+
+    /**
+     * Returns a view of this executor whose futures complete on the given executor. Pass the Minecraft
+     * server so {@code thenAccept} callbacks run on the main thread and may touch the world.
+     */
+    public MariaDBQueryExecutor on(Executor completionExecutor) {
+        return new MariaDBQueryExecutor(this, completionExecutor);
+    }
+
+    /**
+     * Runs a query with positional parameters and maps its result set on the query thread.
+     */
+    public <T> CompletableFuture<T> query(String sql, ResultSetMapper<T> mapper, Object... params) {
+        return query(defaultTimeoutMillis, sql, mapper, params);
+    }
+
+    public <T> CompletableFuture<T> query(long timeoutMillis, String sql, ResultSetMapper<T> mapper, Object... params) {
+        return submit(timeoutMillis, (task, connection) -> {
+            try (PreparedStatement statement = task.prepare(connection, sql, timeoutMillis, params);
+                 ResultSet resultSet = statement.executeQuery()) {
+                return mapper.map(resultSet);
+            }
+        });
+    }
+
+    /**
+     * Runs an INSERT, UPDATE, DELETE or DDL statement.
+     * @return the number of affected rows
+     */
+    public CompletableFuture<Integer> update(String sql, Object... params) {
+        return update(defaultTimeoutMillis, sql, params);
+    }
+
+    public CompletableFuture<Integer> update(long timeoutMillis, String sql, Object... params) {
+        return submit(timeoutMillis, (task, connection) -> {
+            try (PreparedStatement statement = task.prepare(connection, sql, timeoutMillis, params)) {
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Runs arbitrary JDBC work on a pooled connection, e.g. a transaction. A timeout or cancellation fails
+     * the future but can't interrupt statements the callback creates itself, so set query timeouts on them.
+     */
+    public <T> CompletableFuture<T> withConnection(long timeoutMillis, ConnectionCallback<T> callback) {
+        return submit(timeoutMillis, (task, connection) -> callback.apply(connection));
+    }
+
+    @FunctionalInterface
+    private interface Work<T> {
+        T run(QueryTask<T> task, Connection connection) throws SQLException;
+    }
+
+    private <T> CompletableFuture<T> submit(long timeoutMillis, Work<T> work) {
+        QueryTask<T> task = new QueryTask<>();
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            task.completeExceptionally(new RejectedExecutionException("Too many pending queries (" + maxPending + ")"));
+            return deliver(task);
+        }
+        submitted.incrementAndGet();
+        try {
+            executor.execute(() -> task.run(work));
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            task.completeExceptionally(e);
+            return deliver(task);
+        }
+        if (timeoutMillis > 0) {
+            task.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        // Timeouts and cancellation stop the statement too
+        task.whenComplete((result, error) -> {
+            if (error instanceof TimeoutException) {
+                timedOut.incrementAndGet();
+            }
+            if (error != null) {
+                task.abort();
+            }
+        });
+        return deliver(task);
+    }
+
+    private <T> CompletableFuture<T> deliver(CompletableFuture<T> task) {
+        if (completionExecutor == null) {
+            return task;
+        }
+        // Cancelling what the caller holds must still reach the query
+        CompletableFuture<T> delivered = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                task.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        task.whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                delivered.completeExceptionally(error);
+            } else {
+                delivered.complete(result);
+            }
+        }, completionExecutor);
+        return delivered;
+    }
+
+    /**
+     * Future of one query. Cancelling it (or letting it time out) cancels the running statement.
+     */
+    private class QueryTask<T> extends CompletableFuture<T> {
+        // Guarded by this
+        private Thread runner;
+        private PreparedStatement statement;
+        private boolean holdingConnection;
+        private boolean finished;
+
+        void run(Work<T> work) {
+            try {
+                synchronized (this) {
+                    if (isDone()) {
+                        return; // Timed out or cancelled while queued
+                    }
+                    runner = Thread.currentThread();
+                }
+                running.acquire();
+                try (Connection connection = pool.getConnection()) {
+                    synchronized (this) {
+                        holdingConnection = true;
+                    }
+                    T result = work.run(this, connection);
+                    if (complete(result)) {
+                        completed.incrementAndGet();
+                    }
+                } finally {
+                    running.release();
+                }
+            } catch (InterruptedException e) {
+                completeExceptionally(new CompletionException("Query interrupted", e));
+            } catch (SQLException | RuntimeException e) {
+                if (completeExceptionally(e)) {
+                    failed.incrementAndGet();
+                }
+            } finally {
+                synchronized (this) {
+                    finished = true;
+                    runner = null;
+                    statement = null;
+                }
+                pending.decrementAndGet();
+            }
+        }
+
+        PreparedStatement prepare(Connection connection, String sql, long timeoutMillis, Object[] params) throws SQLException {
+            PreparedStatement prepared = connection.prepareStatement(sql);
+            try {
+                for (int i = 0; i < params.length; i++) {
+                    prepared.setObject(i + 1, params[i]);
+                }
+                // Server-side backstop in case the cancel below can't reach the server
+                if (timeoutMillis > 0) {
+                    prepared.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis + 999)));
+                }
+            } catch (SQLException e) {
+                prepared.close();
+                throw e;
+            }
+            synchronized (this) {
+                statement = prepared;
+            }
+            return prepared;
+        }
+
+        // A running statement is cancelled on the server; a query still waiting for a connection is interrupted.
+        // Threads doing I/O on a connection are never interrupted, as that would close its socket.
+        synchronized void abort() {
+            if (finished || runner == null) {
+                return;
+            }
+            if (statement != null) {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    LOGGER.debug("Could not cancel MariaDB statement", e);
+                }
+            } else if (!holdingConnection) {
+                runner.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queries waiting for a connection or running right now.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MariaDBQueryExecutor[pending=%d, submitted=%d, completed=%d, failed=%d, timedOut=%d]",
+            getPendingCount(), getSubmittedCount(), getCompletedCount(), getFailedCount(), getTimedOutCount());
+    }
+
+    /**
+     * Stops accepting queries and gives running ones a few seconds to finish before they are cancelled.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Cancelling {} MariaDB queries still running at shutdown", pending.get());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package savage.dbwrapper.database.mariadb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import savage.dbwrapper.utils.ConfigLoader;
+import savage.dbwrapper.utils.OSUtils;
+import savage.dbwrapper.utils.ProcessUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Golden datadir cache. The first start with a given MariaDB build runs {@code mariadb-install-db} once,
+ * boots the result, sets a random root password, and shuts it down cleanly into
+ * {@code <cache>/<version>/datadir}. Every later fresh datadir is cloned from it, which takes milliseconds
+ * instead of the seconds the installer needs. Several servers may share one cache directory; a file lock
+ * makes sure only one of them builds a given template.
+ * <p>
+ * Clones use reflinks (copy-on-write, on btrfs and XFS) where the filesystem supports them. Otherwise
+ * the files are copied in parallel. They are never hardlinked: MariaDB rewrites even {@code db.opt} and
+ * {@code .frm} files in place, which would change the template under every other clone.
+ */
+final class MariaDBTemplate {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MariaDBTemplate.class);
+
+    private static final Pattern VERSION = Pattern.compile("Ver\\s+(\\S+)");
+    private static final long BUILD_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * Initializes an empty datadir, i.e. runs {@code mariadb-install-db}.
+     */
+    @FunctionalInterface
+    interface Installer {
+        void install(Path dataDir) throws IOException, InterruptedException;
+    }
+
+    private final Path cacheDirectory;
+    private final Path serverBinary;
+    private final Path workingDirectory;
+    private final Path templateDirectory;
+
+    MariaDBTemplate(Path cacheDirectory, Path serverBinary, Path workingDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        this.serverBinary = serverBinary;
+        this.workingDirectory = workingDirectory;
+        this.templateDirectory = cacheDirectory.resolve(versionKey());
+    }
+
+    /**
+     * Root password of the template, and so of every datadir cloned from it until it is secured.
+     * @return null if the template hasn't been built
+     */
+    String getRootPassword() {
+        try {
+            Path file = templateDirectory.resolve("root-password");
+            return Files.exists(file) ? Files.readString(file).trim() : null;
+        } catch (IOException e) {
+            LOGGER.warn("Could not read MariaDB template password", e);
+            return null;
+        }
+    }
+
+    /**
+     * Clones the template into an empty or missing {@code target}, building the template first if needed.
+     */
+    void cloneInto(Path target, Installer installer) throws IOException, InterruptedException {
+        Path template = ensureBuilt(installer);
+        long start = System.nanoTime();
+        String method = reflink(template, target) ? "reflinked" : copy(template, target);
+        LOGGER.info("Cloned MariaDB template {} into {} in {} ms ({})", templateDirectory.getFileName(), target,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), method);
+    }
+
+    private Path ensureBuilt(Installer installer) throws IOException, InterruptedException {
+        Path datadir = templateDirectory.resolve("datadir");
+        if (Files.isDirectory(datadir)) {
+            return datadir;
+        }
+        Files.createDirectories(cacheDirectory);
+        // Other servers sharing the cache may be building the same template right now
+        try (FileChannel channel = FileChannel.open(cacheDirectory.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            if (!Files.isDirectory(datadir)) {
+                build(installer);
+            }
+        }
+        return datadir;
+    }
+
+    private void build(Installer installer) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        LOGGER.info("Building MariaDB datadir template {} (once per MariaDB version)...", templateDirectory.getFileName());
+        Path building = cacheDirectory.resolve(templateDirectory.getFileName() + ".building");
+        deleteDirectory(building);
+        Path datadir = building.resolve("datadir");
+        installer.install(datadir);
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(serverBinary.toAbsolutePath().toString());
+        command.add("--no-defaults");
+        command.add("--console");
+        command.add("--datadir=" + datadir.toAbsolutePath());
+        command.add("--port=" + port);
+        command.add("--bind-address=127.0.0.1");
+        // Clones resize the redo log to their own tuning on first start, so keep the template's small
+        command.add("--innodb-log-file-size=16M");
+        Path socketFile = null;
+        if (!OSUtils.isWindows()) {
+            // Own socket, so the build doesn't collide with another server's default one
+            socketFile = Path.of(System.getProperty("java.io.tmpdir"), "dbwrapper-template-" + ProcessHandle.current().pid() + ".sock");
+            command.add("--socket=" + socketFile.toAbsolutePath());
+        }
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(workingDirectory.toFile());
+        Process process = processBuilder.start();
+        ProcessUtils.logProcessOutput(process, "MariaDB-Template");
+        String password = ConfigLoader.generateRandomPassword(24);
+        try {
+            secure(process, port, password);
+            if (!process.waitFor(BUILD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new IOException("MariaDB template server did not shut down");
+            }
+        } finally {
+            ProcessUtils.destroyProcess(process);
+            if (socketFile != null) {
+                Files.deleteIfExists(socketFile);
+            }
+        }
+
+        Files.writeString(building.resolve("root-password"), password);
+        Files.move(building, templateDirectory, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.info("Built MariaDB datadir template in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // Waits for the fresh server, locks down every root account and shuts down slowly so the files need no recovery when cloned
+    private static void secure(Process process, int port, String password) throws IOException, InterruptedException {
+        String url = "jdbc:mariadb://127.0.0.1:" + port + "/";
+        long deadline = System.currentTimeMillis() + BUILD_TIMEOUT_MILLIS;
+        while (true) {
+            try (Connection connection = DriverManager.getConnection(url, "root", "");
+                 Statement statement = connection.createStatement()) {
+                MariaDBManager.secureAccounts(statement, password);
+                statement.execute("DROP DATABASE IF EXISTS test");
+                statement.execute("SET GLOBAL innodb_fast_shutdown = 0");
+                try {
+                    statement.execute("SHUTDOWN");
+                } catch (SQLException e) {
+                    // The server may drop the connection before acknowledging; the caller waits for the exit
+                }
+                return;
+            } catch (SQLException e) {
+                if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+                    throw new IOException("Could not secure MariaDB template server", e);
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    // Copy-on-write clone of the whole tree in one go; fails fast on filesystems without reflink support
+    private static boolean reflink(Path template, Path target) throws IOException, InterruptedException {
+        if (!OSUtils.isLinux()) {
+            return false;
+        }
+        Files.createDirectories(target);
+        Process process = new ProcessBuilder("cp", "-a", "--reflink=always", template.toAbsolutePath() + "/.", target.toAbsolutePath().toString())
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        if (process.waitFor(30, TimeUnit.SECONDS) && process.exitValue() == 0) {
+            return true;
+        }
+        process.destroyForcibly();
+        // Partial copy; start over with the fallback
+        deleteDirectory(target);
+        return false;
+    }
+
+    private static String copy(Path template, Path target) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(template)) {
+            for (Path source : (Iterable<Path>) paths::iterator) {
+                if (Files.isDirectory(source)) {
+                    Files.createDirectories(target.resolve(template.relativize(source).toString()));
+                } else {
+                    files.add(source);
+                }
+            }
+        }
+
+        try {
+            files.parallelStream().forEach(source -> {
+                Path destination = target.resolve(template.relativize(source).toString());
+                try {
+                    Files.copy(source, destination, StandardCopyOption.COPY_ATTRIBUTES);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return files.size() + " files copied";
+    }
+
+    private String versionKey() {
+        try {
+            Process process = new ProcessBuilder(serverBinary.toAbsolutePath().toString(), "--version")
+                .redirectErrorStream(true)
+                .start();
+            String output;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                output = reader.readLine();
+            }
+            process.waitFor(10, TimeUnit.SECONDS);
+            Matcher matcher = output == null ? null : VERSION.matcher(output);
+            if (matcher != null && matcher.find()) {
+                return sanitize(matcher.group(1) + "-" + OSUtils.getOSName() + "-" + OSUtils.getArchitecture());
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read MariaDB version", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Still changes whenever the binary is replaced
+        try {
+            return sanitize("build-" + Files.size(serverBinary) + "-" + Files.getLastModifiedTime(serverBinary).toMillis());
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    private static String sanitize(String key) {
+        return key.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package savage.dbwrapper.database.mariadb;
+
+import savage.dbwrapper.utils.OSUtils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Server settings for the managed instance, written to a generated my.cnf. The {@code small}, {@code medium}
+ * and {@code large} profiles size InnoDB from the memory left over once the Minecraft server's heap is taken
+ * out, and threads from the core count; {@code custom} keeps MariaDB's stock settings. Ephemeral instances
+ * also turn off the fsyncs, doublewrite and binlog that only matter for surviving a crash. Overrides from the
+ * config are applied last.
+ */
+final class MariaDBTuning {
+    private static final long MB = 1024L * 1024L;
+    // Assumed when the JVM can't report physical memory
+    private static final long FALLBACK_MEMORY_BYTES = 4096 * MB;
+
+    enum Profile {
+        SMALL(16, 64, 512, 8, 50),
+        MEDIUM(8, 128, 4096, 16, 151),
+        LARGE(4, 256, 32768, 64, 500),
+        CUSTOM(0, 0, 0, 0, 0);
+
+        // Buffer pool gets 1/memoryDivisor of the spare memory, clamped to [min, max] MB
+        private final int memoryDivisor;
+        private final long minBufferPoolMb;
+        private final long maxBufferPoolMb;
+        private final long logBufferMb;
+        private final int maxConnections;
+
+        Profile(int memoryDivisor, long minBufferPoolMb, long maxBufferPoolMb, long logBufferMb, int maxConnections) {
+            this.memoryDivisor = memoryDivisor;
+            this.minBufferPoolMb = minBufferPoolMb;
+            this.maxBufferPoolMb = maxBufferPoolMb;
+            this.logBufferMb = logBufferMb;
+            this.maxConnections = maxConnections;
+        }
+
+        /**
+         * @return the profile with this name, or null if there is none
+         */
+        static Profile byName(String name) {
+            for (Profile profile : values()) {
+                if (profile.name().equalsIgnoreCase(name == null ? "" : name.trim())) {
+                    return profile;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Profile profile;
+    private final boolean ephemeral;
+    private final long totalMemoryBytes;
+    private final long spareMemoryBytes;
+    private final int cores;
+    private final Map<String, String> settings;
+
+    private MariaDBTuning(Profile profile, boolean ephemeral, long totalMemoryBytes, long spareMemoryBytes, int cores,
+                          Map<String, String> settings) {
+        this.profile = profile;
+        this.ephemeral = ephemeral;
+        this.totalMemoryBytes = totalMemoryBytes;
+        this.spareMemoryBytes = spareMemoryBytes;
+        this.cores = cores;
+        this.settings = settings;
+    }
+
+    /**
+     * Sizes a profile for this machine.
+     * @param ephemeral whether the datadir is thrown away after the run, so durability can be traded for speed
+     * @param overrides extra [mysqld] settings that win over the profile's, e.g. {@code "innodb_io_capacity": "2000"}
+     */
+    static MariaDBTuning forHost(Profile profile, boolean ephemeral, Map<String, String> overrides) {
+        long totalMemory = totalMemoryBytes();
+        // The server heap is spoken for; size MariaDB from what's left
+        long spareMemory = Math.max(0, totalMemory - Runtime.getRuntime().maxMemory());
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        Map<String, String> settings = new LinkedHashMap<>();
+        // Local only; set bind_address in the overrides to accept remote connections
+        settings.put("bind_address", "127.0.0.1");
+        if (profile != Profile.CUSTOM) {
+            long bufferPool = clamp(spareMemory / profile.memoryDivisor, profile.minBufferPoolMb * MB, profile.maxBufferPoolMb * MB);
+            // InnoDB rounds the pool up to whole 128 MB chunks, so round down ourselves to stay within budget
+            bufferPool = bufferPool >= 128 * MB ? bufferPool / (128 * MB) * (128 * MB) : bufferPool / (16 * MB) * (16 * MB);
+            // A redo log a quarter of the pool keeps checkpoints infrequent without making crash recovery slow
+            long logFile = clamp(bufferPool / 4, 48 * MB, 4096 * MB) / MB * MB;
+
+            settings.put("innodb_buffer_pool_size", megabytes(bufferPool));
+            settings.put("innodb_log_file_size", megabytes(logFile));
+            settings.put("innodb_log_buffer_size", megabytes(profile.logBufferMb * MB));
+            // Skip the page cache; the buffer pool already caches pages. Only Linux supports O_DIRECT here
+            if (OSUtils.isLinux()) {
+                settings.put("innodb_flush_method", "O_DIRECT");
+            }
+            int ioThreads = switch (profile) {
+                case SMALL -> 2;
+                case MEDIUM -> (int) clamp(cores / 2, 4, 16);
+                default -> (int) clamp(cores, 4, 64);
+            };
+            settings.put("innodb_read_io_threads", String.valueOf(ioThreads));
+            settings.put("innodb_write_io_threads", String.valueOf(ioThreads));
+            settings.put("max_connections", String.valueOf(profile.maxConnections));
+            settings.put("thread_handling", "pool-of-threads");
+            // Windows uses its native thread pool, which has no size setting
+            if (!OSUtils.isWindows()) {
+                settings.put("thread_pool_size", String.valueOf(profile == Profile.SMALL ? Math.min(cores, 2) : cores));
+            }
+        }
+        if (ephemeral) {
+            // Nothing survives the run anyway, so skip all the work that exists to survive a crash
+            settings.put("innodb_flush_log_at_trx_commit", "0");
+            settings.put("innodb_doublewrite", "0");
+            settings.put("skip_log_bin", "");
+            settings.put("innodb_buffer_pool_dump_at_shutdown", "0");
+            settings.put("innodb_buffer_pool_load_at_startup", "0");
+            // The datadir is already in memory, and older kernels reject O_DIRECT and native AIO on tmpfs
+            settings.remove("innodb_flush_method");
+            settings.put("innodb_use_native_aio", "0");
+        }
+        if (overrides != null) {
+            overrides.forEach((key, value) -> settings.put(key.trim().replace('-', '_').toLowerCase(Locale.ROOT), value.trim()));
+        }
+        return new MariaDBTuning(profile, ephemeral, totalMemory, spareMemory, cores, settings);
+    }
+
+    /**
+     * Writes the settings as a my.cnf for {@code --defaults-file}, replacing any previous one.
+     */
+    void writeDefaultsFile(Path file) throws IOException {
+        StringBuilder cnf = new StringBuilder();
+        cnf.append("# Generated by DBWrapper from tuning_profile=").append(profile.name().toLowerCase(Locale.ROOT))
+            .append(ephemeral ? " (ephemeral)" : "").append('\n');
+        cnf.append("# Rewritten on every start; put changes in tuning_overrides instead\n");
+        cnf.append("[mysqld]\n");
+        // Flags such as skip_log_bin have no value
+        settings.forEach((key, value) -> cnf.append(key).append(value.isEmpty() ? "" : "=" + value).append('\n'));
+        Files.writeString(file, cnf.toString());
+    }
+
+    Profile getProfile() {
+        return profile;
+    }
+
+    Map<String, String> getSettings() {
+        return settings;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("profile %s%s for %d MB RAM (%d MB spare after the server heap), %d cores: %s",
+            profile.name().toLowerCase(Locale.ROOT), ephemeral ? " (ephemeral)" : "", totalMemoryBytes / MB, spareMemoryBytes / MB, cores,
+            settings.isEmpty() ? "stock settings" : settings);
+    }
+
+    private static long totalMemoryBytes() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        // Container-aware: reports the cgroup limit when there is one
+        if (os instanceof com.sun.management.OperatingSystemMXBean extended && extended.getTotalMemorySize() > 0) {
+            return extended.getTotalMemorySize();
+        }
+        return FALLBACK_MEMORY_BYTES;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static String megabytes(long bytes) {
+        return (bytes / MB) + "M";
+    }
+}
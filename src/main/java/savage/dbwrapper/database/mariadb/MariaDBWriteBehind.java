@@ -0,0 +1,396 @@
+package savage.dbwrapper.database.mariadb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind queue for row upserts. Writes return immediately and are committed by a background thread
+ * every {@code flushIntervalMillis}, or sooner once {@code batchSize} rows are waiting. Repeated writes to
+ * the same row before a flush collapse into one, and each commit sends up to {@code batchSize} rows as a
+ * single multi-row {@code INSERT ... ON DUPLICATE KEY UPDATE}, so an autosave of hundreds of players costs
+ * a handful of round trips and commits instead of one each.
+ * <p>
+ * Writes are only durable once flushed: a commit that fails because the database is unavailable is retried
+ * on the next flush, but rows still queued when the process dies are lost. Call {@link #flush()} where that
+ * matters. Rows the database rejects for their data (bad values, constraint violations) are narrowed down by
+ * retrying smaller batches, then dropped and logged so they don't hold up the rest of the queue.
+ */
+public class MariaDBWriteBehind implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MariaDBWriteBehind.class);
+
+    // MariaDB's limit on placeholders in one prepared statement
+    private static final int MAX_PLACEHOLDERS = 65535;
+
+    private final MariaDBConnectionPool pool;
+    private final long flushIntervalMillis;
+    private final int batchSize;
+
+    private final List<Table> tables = new CopyOnWriteArrayList<>();
+    // Rows queued across all tables
+    private final AtomicInteger depth = new AtomicInteger();
+    // Held for the whole of a flush, so the flusher thread and flush() callers take turns
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Thread flusher;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile double commitsPerSecond;
+    private long rateWindowStart = System.nanoTime();
+    private long rateWindowCommits;
+
+    /**
+     * @param flushIntervalMillis longest a write waits before it is committed
+     * @param batchSize rows that trigger an early flush, and the most rows per commit
+     */
+    public MariaDBWriteBehind(MariaDBConnectionPool pool, long flushIntervalMillis, int batchSize) {
+        this.pool = pool;
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        this.batchSize = Math.max(1, batchSize);
+        this.flusher = new Thread(this::run, "MariaDB-Write-Behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Registers a table to write to. The table needs a primary or unique key over {@code keyColumns}
+     * for rows to be updated rather than duplicated.
+     */
+    public Table table(String name, List<String> keyColumns, List<String> valueColumns) {
+        Table table = new Table(name, keyColumns, valueColumns);
+        tables.add(table);
+        return table;
+    }
+
+    /**
+     * Upserts into one table. Rows are identified by their key column values.
+     */
+    public class Table {
+        private final String name;
+        private final int keyCount;
+        private final int columnCount;
+        private final String insertPrefix;
+        private final String rowPlaceholders;
+        private final String updateClause;
+        private final int maxRowsPerStatement;
+        private final String fullStatementSql;
+        // Latest values per row key
+        private final Map<List<Object>, Object[]> pending = new ConcurrentHashMap<>();
+
+        private Table(String name, List<String> keyColumns, List<String> valueColumns) {
+            if (keyColumns.isEmpty() || valueColumns.isEmpty()) {
+                throw new IllegalArgumentException("A write-behind table needs key and value columns");
+            }
+            this.name = name;
+            this.keyCount = keyColumns.size();
+            this.columnCount = keyCount + valueColumns.size();
+
+            List<String> columns = new ArrayList<>(keyColumns);
+            columns.addAll(valueColumns);
+            StringBuilder prefix = new StringBuilder("INSERT INTO ").append(quote(name)).append(" (");
+            StringBuilder placeholders = new StringBuilder("(");
+            for (int i = 0; i < columns.size(); i++) {
+                prefix.append(i == 0 ? "" : ", ").append(quote(columns.get(i)));
+                placeholders.append(i == 0 ? "?" : ", ?");
+            }
+            this.insertPrefix = prefix.append(") VALUES ").toString();
+            this.rowPlaceholders = placeholders.append(')').toString();
+
+            StringBuilder update = new StringBuilder(" ON DUPLICATE KEY UPDATE ");
+            for (int i = 0; i < valueColumns.size(); i++) {
+                String column = quote(valueColumns.get(i));
+                update.append(i == 0 ? "" : ", ").append(column).append(" = VALUES(").append(column).append(')');
+            }
+            this.updateClause = update.toString();
+            this.maxRowsPerStatement = Math.max(1, Math.min(batchSize, MAX_PLACEHOLDERS / columnCount));
+            this.fullStatementSql = sqlFor(maxRowsPerStatement);
+        }
+
+        /**
+         * Queues an upsert, replacing any write to the same row that hasn't been flushed yet.
+         * @param values key columns first, then value columns, in the order they were registered
+         */
+        public void write(Object... values) {
+            if (closed) {
+                throw new IllegalStateException("Write-behind queue is closed");
+            }
+            if (values.length != columnCount) {
+                throw new IllegalArgumentException("Expected " + columnCount + " values for " + name + ", got " + values.length);
+            }
+            Object[] row = values.clone();
+            writes.incrementAndGet();
+            if (pending.put(Arrays.asList(Arrays.copyOf(row, keyCount)), row) != null) {
+                coalesced.incrementAndGet();
+            } else if (depth.incrementAndGet() == batchSize) {
+                wakeFlusher();
+            }
+        }
+
+        /**
+         * Rows of this table waiting to be committed.
+         */
+        public int getQueuedCount() {
+            return pending.size();
+        }
+
+        // Takes every queued row off the map; writes arriving meanwhile are left for the next flush
+        private List<Object[]> drain() {
+            List<Object[]> rows = new ArrayList<>(pending.size());
+            for (List<Object> key : pending.keySet()) {
+                Object[] row = pending.remove(key);
+                if (row != null) {
+                    depth.decrementAndGet();
+                    rows.add(row);
+                }
+            }
+            return rows;
+        }
+
+        // Puts rows back after a failed commit, unless the row has been written again since
+        private void requeue(List<Object[]> rows) {
+            for (Object[] row : rows) {
+                if (pending.putIfAbsent(Arrays.asList(Arrays.copyOf(row, keyCount)), row) == null) {
+                    depth.incrementAndGet();
+                }
+            }
+        }
+
+        private String sqlFor(int rows) {
+            if (rows == maxRowsPerStatement && fullStatementSql != null) {
+                return fullStatementSql;
+            }
+            StringBuilder sql = new StringBuilder(insertPrefix.length() + rows * (rowPlaceholders.length() + 2) + updateClause.length());
+            sql.append(insertPrefix);
+            for (int i = 0; i < rows; i++) {
+                sql.append(i == 0 ? "" : ", ").append(rowPlaceholders);
+            }
+            return sql.append(updateClause).toString();
+        }
+    }
+
+    private static String quote(String identifier) {
+        if (!identifier.matches("^[a-zA-Z0-9_]+$")) {
+            throw new IllegalArgumentException("Invalid identifier: " + identifier);
+        }
+        return "`" + identifier + "`";
+    }
+
+    private synchronized void wakeFlusher() {
+        notifyAll();
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                synchronized (this) {
+                    if (depth.get() < batchSize && !closed) {
+                        wait(flushIntervalMillis);
+                    }
+                }
+                flush();
+            } catch (InterruptedException e) {
+                return;
+            } catch (SQLException e) {
+                // Rows were put back; try again after the next interval rather than spinning on a broken database
+                LOGGER.warn("Write-behind flush failed, {} rows will be retried: {}", depth.get(), e.getMessage());
+                try {
+                    Thread.sleep(flushIntervalMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Unexpected error in write-behind flusher", e);
+            }
+        }
+    }
+
+    /**
+     * Commits everything queued so far, blocking until done. Rows the database rejects are dropped.
+     * @throws SQLException if some commits failed because the database was unavailable; their rows stay
+     *                      queued for the next flush, and every other group was still attempted
+     */
+    public void flush() throws SQLException {
+        flushLock.lock();
+        try {
+            SQLException failure = null;
+            for (Table table : tables) {
+                List<Object[]> rows = table.drain();
+                for (int start = 0; start < rows.size(); start += batchSize) {
+                    SQLException e = commitOrSplit(table, rows.subList(start, Math.min(rows.size(), start + batchSize)));
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            updateRate();
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Commits the rows, halving the batch while the database rejects it until the offending rows are alone
+    // and can be dropped. Rows that failed for any other reason are requeued and the error returned.
+    private SQLException commitOrSplit(Table table, List<Object[]> rows) {
+        try {
+            commit(table, rows);
+            return null;
+        } catch (SQLException e) {
+            failures.incrementAndGet();
+            if (!isRejection(e)) {
+                table.requeue(rows);
+                return e;
+            }
+            if (rows.size() == 1) {
+                dropped.incrementAndGet();
+                LOGGER.error("Dropping write-behind row for {} with key {}: {}", table.name,
+                    Arrays.toString(Arrays.copyOf(rows.get(0), table.keyCount)), e.getMessage());
+                return null;
+            }
+            int middle = rows.size() / 2;
+            SQLException first = commitOrSplit(table, rows.subList(0, middle));
+            SQLException second = commitOrSplit(table, rows.subList(middle, rows.size()));
+            return first != null ? first : second;
+        }
+    }
+
+    // Retrying can't fix it: a data exception (22, e.g. value too long) or integrity violation (23) caused by the row
+    // itself. Everything else is kept, including HY000, which covers lock wait timeouts, read-only mode and a full
+    // disk, and 42S02 for a table that doesn't exist yet.
+    private static boolean isRejection(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("22") || state.startsWith("23"))
+            && !(e instanceof SQLTransientException) && !(e instanceof SQLRecoverableException);
+    }
+
+    // One transaction per group, made of as few multi-row statements as the placeholder limit allows
+    private void commit(Table table, List<Object[]> group) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (int start = 0; start < group.size(); start += table.maxRowsPerStatement) {
+                    int end = Math.min(group.size(), start + table.maxRowsPerStatement);
+                    try (PreparedStatement statement = connection.prepareStatement(table.sqlFor(end - start))) {
+                        int index = 1;
+                        for (int i = start; i < end; i++) {
+                            for (Object value : group.get(i)) {
+                                statement.setObject(index++, value);
+                            }
+                        }
+                        statement.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        commits.incrementAndGet();
+        rowsWritten.addAndGet(group.size());
+    }
+
+    // Caller holds flushLock
+    private void updateRate() {
+        long now = System.nanoTime();
+        long elapsed = now - rateWindowStart;
+        if (elapsed >= 1_000_000_000L) {
+            long total = commits.get();
+            commitsPerSecond = (total - rateWindowCommits) * 1e9 / elapsed;
+            rateWindowCommits = total;
+            rateWindowStart = now;
+        }
+    }
+
+    /**
+     * Rows waiting to be committed, across all tables.
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Commits per second, measured over the last second or so of flushes.
+     */
+    public double getCommitsPerSecond() {
+        return commitsPerSecond;
+    }
+
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    /**
+     * Writes that replaced a queued write to the same row instead of adding a row.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Rows dropped because the database rejected them.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MariaDBWriteBehind[queued=%d, writes=%d, coalesced=%d, rows=%d, commits=%d, failures=%d, dropped=%d, commits/s=%.1f]",
+            getQueueDepth(), getWriteCount(), getCoalescedCount(), getRowsWritten(), getCommitCount(), getFailureCount(),
+            getDroppedCount(), getCommitsPerSecond());
+    }
+
+    /**
+     * Stops the flusher and commits whatever is still queued. Later writes are rejected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        wakeFlusher();
+        try {
+            flusher.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } catch (SQLException e) {
+            LOGGER.error("Final write-behind flush failed, {} rows were not saved", depth.get(), e);
+        }
+    }
+}
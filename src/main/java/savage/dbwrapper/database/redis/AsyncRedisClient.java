@@ -0,0 +1,335 @@
+package savage.dbwrapper.database.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread-safe Redis client that multiplexes many callers over one connection.
+ * Every command returns a {@link CompletableFuture} straight away; commands are encoded into a shared
+ * buffer and a writer thread sends whatever has accumulated in one write, so commands issued close
+ * together are pipelined automatically. Replies arrive in command order and are matched to a FIFO of
+ * pending futures by a reader thread.
+ * <p>
+ * Futures complete on the reader thread, so heavy callbacks should use the {@code *Async} variants of
+ * {@link CompletableFuture}. Blocking server commands (such as LOCK.ACQUIRE with a timeout) would stall
+ * every caller queued behind them and are better sent through a {@link SimpleRedisClient}. Commands that turn
+ * the connection into a push stream (SUBSCRIBE, MONITOR, CLIENT TRACKING ON) are refused; use a
+ * {@link RedisSubscriber} for those.
+ */
+public class AsyncRedisClient implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncRedisClient.class);
+
+    // Their replies are not one per command, which would put every later future out of step with its reply
+    private static final Set<String> PUSH_COMMANDS = Set.of("SUBSCRIBE", "PSUBSCRIBE", "SSUBSCRIBE", "UNSUBSCRIBE",
+        "PUNSUBSCRIBE", "SUNSUBSCRIBE", "MONITOR");
+
+    private final String host;
+    private final int port;
+    private final Path unixSocketPath;
+    private Socket socket;
+    private SocketChannel unixChannel;
+    private OutputStream out;
+
+    // Encoded commands waiting for the writer, and the futures for them in the same order; both guarded by this
+    private ByteArrayOutputStream outgoing = new ByteArrayOutputStream();
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+    private final Queue<CompletableFuture<Object>> pending = new ConcurrentLinkedQueue<>();
+    // Set once connect() succeeds; the client is only connected until it is closed or the connection is lost
+    private volatile boolean connected = false;
+    private volatile boolean closed = false;
+
+    public AsyncRedisClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+        this.unixSocketPath = null;
+    }
+
+    /**
+     * Creates a client that connects over a Unix domain socket instead of TCP.
+     */
+    public AsyncRedisClient(Path unixSocketPath) {
+        this.host = null;
+        this.port = -1;
+        this.unixSocketPath = unixSocketPath;
+    }
+
+    public void connect() throws IOException {
+        InputStream in;
+        if (unixSocketPath != null) {
+            unixChannel = SocketChannel.open(UnixDomainSocketAddress.of(unixSocketPath));
+            in = Channels.newInputStream(unixChannel);
+            out = Channels.newOutputStream(unixChannel);
+        } else {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = socket.getInputStream();
+            out = socket.getOutputStream();
+        }
+
+        RespReader reader = new RespReader(in);
+        Thread writerThread = new Thread(this::writeLoop, "Redis-Async-Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Thread readerThread = new Thread(() -> readLoop(reader), "Redis-Async-Reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        connected = true;
+        LOGGER.info("Async Redis client connected to {}", unixSocketPath != null ? unixSocketPath : host + ":" + port);
+    }
+
+    /**
+     * Sends any command except the pub/sub ones, which need a {@link RedisSubscriber}.
+     * @return the reply (String, Long, List or null); error replies complete the future exceptionally with an IOException,
+     * and refused commands with an IllegalArgumentException
+     */
+    public CompletableFuture<Object> command(String... parts) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        String pushCommand = pushCommand(parts);
+        if (pushCommand != null) {
+            future.completeExceptionally(new IllegalArgumentException(
+                pushCommand + " would turn the shared connection into a push stream; use a RedisSubscriber"));
+            return future;
+        }
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new IOException("Client is closed"));
+                return future;
+            }
+            boolean writerIdle = outgoing.size() == 0;
+            encode(outgoing, parts);
+            // Queued under the same lock as the bytes, so the FIFO matches the order replies will come back in
+            pending.add(future);
+            if (writerIdle) {
+                notifyAll();
+            }
+        }
+        return future;
+    }
+
+    public CompletableFuture<Void> auth(String password) {
+        return command("AUTH", password).thenAccept(reply -> { });
+    }
+
+    public CompletableFuture<String> ping() {
+        return command("PING").thenApply(String.class::cast);
+    }
+
+    public CompletableFuture<Void> set(String key, String value) {
+        return command("SET", key, value).thenAccept(reply -> { });
+    }
+
+    public CompletableFuture<Void> setWithExpiration(String key, String value, long ttlMillis) {
+        return command("SET", key, value, "PX", String.valueOf(ttlMillis)).thenAccept(reply -> { });
+    }
+
+    /**
+     * SET NX with an optional expiry (ttlMillis &lt;= 0 for none).
+     */
+    public CompletableFuture<Boolean> setIfAbsent(String key, String value, long ttlMillis) {
+        CompletableFuture<Object> reply = ttlMillis > 0
+            ? command("SET", key, value, "NX", "PX", String.valueOf(ttlMillis))
+            : command("SET", key, value, "NX");
+        return reply.thenApply(result -> result != null);
+    }
+
+    public CompletableFuture<String> get(String key) {
+        return command("GET", key).thenApply(String.class::cast);
+    }
+
+    public CompletableFuture<Boolean> exists(String key) {
+        return command("EXISTS", key).thenApply(reply -> (Long) reply == 1);
+    }
+
+    public CompletableFuture<Boolean> del(String key) {
+        return command("DEL", key).thenApply(reply -> (Long) reply == 1);
+    }
+
+    /**
+     * @return number of subscribers that received the message
+     */
+    public CompletableFuture<Long> publish(String channel, String message) {
+        return command("PUBLISH", channel, message).thenApply(Long.class::cast);
+    }
+
+    public CompletableFuture<ThrottleResult> throttle(String key, long maxBurst, long countPerPeriod, long periodMillis, long quantity) {
+        return command("THROTTLE", key, String.valueOf(maxBurst), String.valueOf(countPerPeriod),
+                String.valueOf(periodMillis), String.valueOf(quantity))
+            .thenApply(reply -> {
+                List<?> fields = (List<?>) reply;
+                return new ThrottleResult((Long) fields.get(0) == 1, (Long) fields.get(1), (Long) fields.get(2),
+                    (Long) fields.get(3), (Long) fields.get(4));
+            });
+    }
+
+    /**
+     * Calls a server-side function registered with {@link RedisManager#registerFunction(String, RedisFunction)}.
+     */
+    public CompletableFuture<Object> fcall(String function, List<String> keys, List<String> args) {
+        List<String> parts = new ArrayList<>(3 + keys.size() + args.size());
+        parts.add("FCALL");
+        parts.add(function);
+        parts.add(String.valueOf(keys.size()));
+        parts.addAll(keys);
+        parts.addAll(args);
+        return command(parts.toArray(new String[0]));
+    }
+
+    /**
+     * Number of commands sent (or waiting to be sent) whose replies haven't arrived yet.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public boolean isConnected() {
+        return connected && !closed;
+    }
+
+    // The name of a command this client refuses, or null if it can be sent
+    private static String pushCommand(String[] parts) {
+        if (parts.length == 0 || parts[0] == null) {
+            return null;
+        }
+        String command = parts[0].toUpperCase(Locale.ROOT);
+        if (PUSH_COMMANDS.contains(command)) {
+            return command;
+        }
+        if (command.equals("CLIENT") && parts.length > 2 && "TRACKING".equalsIgnoreCase(parts[1])
+                && "ON".equalsIgnoreCase(parts[2])) {
+            return "CLIENT TRACKING ON";
+        }
+        return null;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                ByteArrayOutputStream batch;
+                synchronized (this) {
+                    while (outgoing.size() == 0 && !closed) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    // Swap buffers so callers keep encoding while this batch is on the wire
+                    batch = outgoing;
+                    outgoing = spare;
+                    spare = batch;
+                }
+                batch.writeTo(out);
+                out.flush();
+                batch.reset();
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readLoop(RespReader reader) {
+        try {
+            while (!closed) {
+                Object reply = reader.readReply();
+                CompletableFuture<Object> future = pending.poll();
+                if (future == null) {
+                    throw new IOException("Reply without a pending command");
+                }
+                if (reply instanceof IOException error) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(reply);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    // Connection lost: nothing in flight can be answered any more
+    private void fail(Exception cause) {
+        boolean wasClosed;
+        synchronized (this) {
+            wasClosed = closed;
+            closed = true;
+            connected = false;
+            notifyAll();
+        }
+        if (!wasClosed) {
+            LOGGER.warn("Async Redis connection lost", cause);
+            closeConnection();
+        }
+        failPending(cause instanceof IOException io ? io : new IOException(cause));
+    }
+
+    private void failPending(IOException cause) {
+        CompletableFuture<Object> future;
+        while ((future = pending.poll()) != null) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    private static void encode(ByteArrayOutputStream buffer, String[] parts) {
+        buffer.writeBytes(("*" + parts.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        for (String part : parts) {
+            if (part == null) {
+                buffer.writeBytes("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+                continue;
+            }
+            byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+            buffer.writeBytes(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            buffer.writeBytes(bytes);
+            buffer.writeBytes(new byte[] {'\r', '\n'});
+        }
+    }
+
+    private void closeConnection() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+            if (unixChannel != null) {
+                unixChannel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Error closing async Redis connection", e);
+        }
+    }
+
+    /**
+     * Closes the connection. Commands still waiting for a reply fail with an IOException.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connected = false;
+            notifyAll();
+        }
+        closeConnection();
+        failPending(new IOException("Client closed"));
+        LOGGER.info("Async Redis client disconnected");
+    }
+}
@@ -0,0 +1,123 @@
+package savage.dbwrapper.database.redis;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Bit operations on byte-array values, using Redis bit order (bit 0 is the most significant bit of byte 0).
+ * Counting and BITOP work a 64-bit word at a time.
+ */
+final class Bitmaps {
+    // Redis limits bitmaps to 512 MB
+    static final long MAX_BIT_OFFSET = (1L << 32) - 1;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private Bitmaps() {
+    }
+
+    static int getBit(byte[] bitmap, long offset) {
+        int byteIndex = (int) (offset >>> 3);
+        if (bitmap == null || byteIndex >= bitmap.length) {
+            return 0;
+        }
+        int bit = 7 - (int) (offset & 7);
+        return (bitmap[byteIndex] >> bit) & 1;
+    }
+
+    /**
+     * Sets a bit, growing the array when needed.
+     * @return the (possibly reallocated) bitmap
+     */
+    static byte[] setBit(byte[] bitmap, long offset, int value) {
+        int byteIndex = (int) (offset >>> 3);
+        if (bitmap == null) {
+            bitmap = new byte[byteIndex + 1];
+        } else if (byteIndex >= bitmap.length) {
+            bitmap = Arrays.copyOf(bitmap, byteIndex + 1);
+        }
+        int mask = 1 << (7 - (int) (offset & 7));
+        if (value != 0) {
+            bitmap[byteIndex] |= (byte) mask;
+        } else {
+            bitmap[byteIndex] &= (byte) ~mask;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Counts set bits in bytes [start, end] (inclusive, already clamped to the array).
+     */
+    static long bitCount(byte[] bitmap, int start, int end) {
+        long count = 0;
+        int i = start;
+        int limit = end + 1;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            count += Long.bitCount((long) LONGS.get(bitmap, i));
+        }
+        for (; i < limit; i++) {
+            count += Integer.bitCount(bitmap[i] & 0xff);
+        }
+        return count;
+    }
+
+    /**
+     * Applies AND, OR, XOR or NOT across the sources; shorter sources are treated as zero-padded.
+     */
+    static byte[] bitOp(String operation, byte[][] sources) {
+        int length = 0;
+        for (byte[] source : sources) {
+            length = Math.max(length, source == null ? 0 : source.length);
+        }
+        byte[] result = new byte[length];
+
+        if ("NOT".equals(operation)) {
+            byte[] source = sources[0] == null ? result : sources[0];
+            int i = 0;
+            for (; i + Long.BYTES <= length; i += Long.BYTES) {
+                LONGS.set(result, i, ~(long) LONGS.get(source, i));
+            }
+            for (; i < length; i++) {
+                result[i] = (byte) ~source[i];
+            }
+            return result;
+        }
+
+        LongBinaryOperator combine = operator(operation);
+        boolean first = true;
+        for (byte[] source : sources) {
+            byte[] padded = source == null ? new byte[length] : source.length == length ? source : Arrays.copyOf(source, length);
+            if (first) {
+                System.arraycopy(padded, 0, result, 0, length);
+                first = false;
+                continue;
+            }
+            int i = 0;
+            for (; i + Long.BYTES <= length; i += Long.BYTES) {
+                long a = (long) LONGS.get(result, i);
+                long b = (long) LONGS.get(padded, i);
+                LONGS.set(result, i, combine.applyAsLong(a, b));
+            }
+            for (; i < length; i++) {
+                result[i] = (byte) combine.applyAsLong(result[i], padded[i]);
+            }
+        }
+        return result;
+    }
+
+    private static LongBinaryOperator operator(String operation) {
+        switch (operation) {
+            case "AND":
+                return (a, b) -> a & b;
+            case "OR":
+                return (a, b) -> a | b;
+            case "XOR":
+                return (a, b) -> a ^ b;
+            default:
+                throw new IllegalArgumentException("syntax error");
+        }
+    }
+}
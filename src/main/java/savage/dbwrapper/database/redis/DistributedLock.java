@@ -0,0 +1,58 @@
+package savage.dbwrapper.database.redis;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Lease-based lock shared between servers through Redis. The lock key holds a random per-instance token,
+ * so only the holder can release or renew it, and the lease expires on its own if the holder dies.
+ * <p>
+ * {@link #lock(long, long)} waits in the server's fair queue and blocks the client's connection while it does,
+ * so use a dedicated {@link SimpleRedisClient} (or a {@link LocalRedisClient}) for blocking acquires.
+ */
+public class DistributedLock {
+    private final RedisClient client;
+    private final String key;
+    private final String token = UUID.randomUUID().toString();
+
+    public DistributedLock(RedisClient client, String key) {
+        this.client = client;
+        this.key = key;
+    }
+
+    /**
+     * Takes the lock if it is free and nobody is queued for it.
+     */
+    public boolean tryLock(long leaseMillis) throws IOException {
+        return client.acquireLock(key, token, leaseMillis, 0);
+    }
+
+    /**
+     * Waits up to timeoutMillis for the lock; waiters are served in arrival order.
+     */
+    public boolean lock(long leaseMillis, long timeoutMillis) throws IOException {
+        return client.acquireLock(key, token, leaseMillis, timeoutMillis);
+    }
+
+    /**
+     * Extends the lease. Returns false if the lock was lost (expired or taken by someone else).
+     */
+    public boolean renew(long leaseMillis) throws IOException {
+        return client.compareAndExpire(key, token, leaseMillis);
+    }
+
+    /**
+     * Releases the lock if we still hold it, handing it to the next waiter.
+     */
+    public boolean unlock() throws IOException {
+        return client.compareAndDelete(key, token);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getToken() {
+        return token;
+    }
+}
@@ -0,0 +1,36 @@
+package savage.dbwrapper.database.redis;
+
+/**
+ * What a database does when a write would take it over its memory quota, named as in Redis' maxmemory-policy.
+ */
+public enum EvictionPolicy {
+    // Reject the write with an OOM error
+    NOEVICTION,
+    // Evict the least recently used key (sampled)
+    ALLKEYS_LRU,
+    // Evict the least recently used key that has a TTL
+    VOLATILE_LRU,
+    ALLKEYS_RANDOM,
+    VOLATILE_RANDOM,
+    // Evict the key closest to expiring
+    VOLATILE_TTL;
+
+    boolean isVolatile() {
+        return this == VOLATILE_LRU || this == VOLATILE_RANDOM || this == VOLATILE_TTL;
+    }
+
+    boolean isLru() {
+        return this == ALLKEYS_LRU || this == VOLATILE_LRU;
+    }
+
+    /**
+     * Parses a Redis-style policy name such as "allkeys-lru".
+     */
+    public static EvictionPolicy fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+    public String getName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,78 @@
+package savage.dbwrapper.database.redis;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generic cell rate algorithm behind THROTTLE. The whole state of a limiter is its theoretical arrival
+ * time (TAT), the moment it would be fully drained again. A request is allowed while adding its cost
+ * keeps the TAT within the burst tolerance of now.
+ */
+final class Gcra {
+    // About 73 years; keeps TAT, tolerance and their sums well inside a long
+    private static final long MAX_SPAN_NANOS = Long.MAX_VALUE / 4;
+
+    private Gcra() {
+    }
+
+    /**
+     * Value stored in the keyspace for a throttled key. Updated in place, so steady traffic doesn't allocate.
+     */
+    static final class Cell {
+        long theoreticalArrivalNanos;
+    }
+
+    /**
+     * Applies a request of the given quantity to the cell, advancing its TAT if allowed.
+     * @param cell limiter state; a new limiter starts with its TAT at now
+     * @param now current {@link System#nanoTime()}
+     */
+    static ThrottleResult apply(Cell cell, long now, long maxBurst, long countPerPeriod, long periodNanos, long quantity) {
+        long emissionInterval = periodNanos / countPerPeriod;
+        if (emissionInterval == 0) {
+            throw new IllegalArgumentException("count_per_period exceeds one per nanosecond of period_ms");
+        }
+        long tolerance = span(emissionInterval, maxBurst + 1);
+        long increment = span(emissionInterval, quantity);
+
+        long tat = Math.max(cell.theoreticalArrivalNanos, now);
+        long newTat = tat + increment;
+        long diff = now - (newTat - tolerance);
+
+        boolean limited = diff < 0;
+        long retryAfter = -1;
+        long ttl;
+        if (limited) {
+            // A request larger than the whole burst can never succeed, so there is nothing to retry
+            if (increment <= tolerance) {
+                retryAfter = -diff;
+            }
+            ttl = tat - now;
+        } else {
+            cell.theoreticalArrivalNanos = newTat;
+            ttl = newTat - now;
+        }
+
+        long next = tolerance - ttl;
+        long remaining = next > -emissionInterval ? next / emissionInterval : 0;
+        return new ThrottleResult(limited, maxBurst + 1, remaining, retryAfter < 0 ? -1 : ceilMillis(retryAfter), ceilMillis(ttl));
+    }
+
+    // Interval times count, bounded so TAT arithmetic against System.nanoTime() can't overflow
+    private static long span(long emissionInterval, long count) {
+        try {
+            long span = Math.multiplyExact(emissionInterval, count);
+            if (span <= MAX_SPAN_NANOS) {
+                return span;
+            }
+        } catch (ArithmeticException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("throttle burst or quantity spans too long a time");
+    }
+
+    // Rounded up so callers never retry too early
+    static long ceilMillis(long nanos) {
+        long nanosPerMilli = TimeUnit.MILLISECONDS.toNanos(1);
+        return (nanos + nanosPerMilli - 1) / nanosPerMilli;
+    }
+}
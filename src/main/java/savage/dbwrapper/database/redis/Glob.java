@@ -0,0 +1,90 @@
+package savage.dbwrapper.database.redis;
+
+/**
+ * Redis-style glob matching, as used by PSUBSCRIBE: {@code *} matches any run of characters, {@code ?} one
+ * character, {@code [abc]}, {@code [^abc]} and {@code [a-z]} a character class, and {@code \} escapes the next character.
+ */
+final class Glob {
+    private Glob() {
+    }
+
+    static boolean matches(String pattern, String text) {
+        int p = 0;
+        int t = 0;
+        // Where to resume after the last '*' if the rest fails to match: the star's pattern index and text index
+        int starPattern = -1;
+        int starText = 0;
+
+        while (t < text.length()) {
+            if (p < pattern.length()) {
+                char c = pattern.charAt(p);
+                if (c == '*') {
+                    starPattern = ++p;
+                    starText = t;
+                    continue;
+                }
+                int next = matchOne(pattern, p, text.charAt(t));
+                if (next >= 0) {
+                    p = next;
+                    t++;
+                    continue;
+                }
+            }
+            if (starPattern < 0) {
+                return false;
+            }
+            // Let the last star swallow one more character and retry
+            p = starPattern;
+            t = ++starText;
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    // Matches one pattern element at p against ch; returns the index after the element, or -1 on mismatch
+    private static int matchOne(String pattern, int p, char ch) {
+        char c = pattern.charAt(p);
+        switch (c) {
+            case '?':
+                return p + 1;
+            case '\\':
+                if (p + 1 < pattern.length()) {
+                    return pattern.charAt(p + 1) == ch ? p + 2 : -1;
+                }
+                return ch == '\\' ? p + 1 : -1;
+            case '[': {
+                int i = p + 1;
+                boolean negate = i < pattern.length() && pattern.charAt(i) == '^';
+                if (negate) {
+                    i++;
+                }
+                boolean matched = false;
+                while (i < pattern.length() && pattern.charAt(i) != ']') {
+                    char start = pattern.charAt(i);
+                    if (start == '\\' && i + 1 < pattern.length()) {
+                        start = pattern.charAt(++i);
+                    }
+                    if (i + 2 < pattern.length() && pattern.charAt(i + 1) == '-' && pattern.charAt(i + 2) != ']') {
+                        char end = pattern.charAt(i + 2);
+                        if ((start <= end && ch >= start && ch <= end) || (start > end && ch >= end && ch <= start)) {
+                            matched = true;
+                        }
+                        i += 3;
+                    } else {
+                        if (start == ch) {
+                            matched = true;
+                        }
+                        i++;
+                    }
+                }
+                // An unterminated class runs to the end of the pattern, as in Redis
+                int after = i < pattern.length() ? i + 1 : i;
+                return matched != negate ? after : -1;
+            }
+            default:
+                return c == ch ? p + 1 : -1;
+        }
+    }
+}
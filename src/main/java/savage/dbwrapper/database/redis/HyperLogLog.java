@@ -0,0 +1,253 @@
+package savage.dbwrapper.database.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog cardinality estimator with the same parameters as Redis: 16384 registers of 6 bits
+ * (about 12 KB dense, 0.81% standard error) and a 64-bit MurmurHash.
+ * <p>
+ * Counters start in a sparse encoding (a sorted array of non-zero registers) and switch to the
+ * dense encoding once that would stop saving memory, so small daily sets stay tiny.
+ */
+public class HyperLogLog {
+    private static final int P = 14;
+    private static final int REGISTERS = 1 << P;
+    private static final int REGISTER_BITS = 6;
+    private static final int REGISTER_MAX = (1 << REGISTER_BITS) - 1;
+    private static final int Q = 64 - P;
+    // One spare byte so a register straddling the last byte can be read without a bounds check
+    private static final int DENSE_BYTES = REGISTERS * REGISTER_BITS / 8 + 1;
+    // Each sparse entry is an int (index << 8 | value); promote when that outgrows a quarter of dense
+    private static final int SPARSE_MAX_ENTRIES = DENSE_BYTES / 4 / Integer.BYTES;
+    private static final double ALPHA_INF = 0.5 / Math.log(2);
+
+    private int[] sparse = new int[8];
+    private int sparseSize = 0;
+    private byte[] dense;
+
+    // Cached estimate, invalidated whenever a register changes
+    private long cachedCardinality = -1;
+
+    /**
+     * @return true if any register changed (the estimate may have moved)
+     */
+    public boolean add(String element) {
+        return add(element.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean add(byte[] element) {
+        long hash = murmurHash64A(element, 0xadc83b19L);
+        int index = (int) (hash & (REGISTERS - 1));
+        // Rank = position of the first set bit in the remaining bits; the sentinel bounds it to Q + 1
+        long remaining = (hash >>> P) | (1L << Q);
+        int rank = Long.numberOfTrailingZeros(remaining) + 1;
+        return updateRegister(index, rank);
+    }
+
+    public long count() {
+        if (cachedCardinality >= 0) {
+            return cachedCardinality;
+        }
+
+        int[] histogram = new int[Q + 2];
+        if (dense != null) {
+            for (int i = 0; i < REGISTERS; i++) {
+                histogram[getDense(i)]++;
+            }
+        } else {
+            histogram[0] = REGISTERS - sparseSize;
+            for (int i = 0; i < sparseSize; i++) {
+                histogram[sparse[i] & 0xff]++;
+            }
+        }
+
+        // Ertl's improved raw estimator, as used by Redis
+        double z = REGISTERS * tau((REGISTERS - histogram[Q + 1]) / (double) REGISTERS);
+        for (int j = Q; j >= 1; j--) {
+            z += histogram[j];
+            z *= 0.5;
+        }
+        z += REGISTERS * sigma(histogram[0] / (double) REGISTERS);
+        cachedCardinality = Math.round(ALPHA_INF * REGISTERS * REGISTERS / z);
+        return cachedCardinality;
+    }
+
+    /**
+     * Merges another counter into this one by taking the maximum of every register.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.dense != null) {
+            for (int i = 0; i < REGISTERS; i++) {
+                int value = other.getDense(i);
+                if (value != 0) {
+                    updateRegister(i, value);
+                }
+            }
+        } else {
+            for (int i = 0; i < other.sparseSize; i++) {
+                updateRegister(other.sparse[i] >>> 8, other.sparse[i] & 0xff);
+            }
+        }
+    }
+
+    /**
+     * Independent copy, so an update can be prepared without touching the stored counter.
+     */
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog();
+        // Dense counters have dropped their sparse array
+        copy.sparse = sparse == null ? null : Arrays.copyOf(sparse, sparse.length);
+        copy.sparseSize = sparseSize;
+        copy.dense = dense == null ? null : Arrays.copyOf(dense, dense.length);
+        copy.cachedCardinality = cachedCardinality;
+        return copy;
+    }
+
+    public boolean isSparse() {
+        return dense == null;
+    }
+
+    /**
+     * Approximate memory used by the registers, in bytes.
+     */
+    public int sizeInBytes() {
+        return dense != null ? dense.length : sparse.length * Integer.BYTES;
+    }
+
+    private boolean updateRegister(int index, int rank) {
+        if (dense != null) {
+            if (getDense(index) >= rank) {
+                return false;
+            }
+            setDense(index, rank);
+            cachedCardinality = -1;
+            return true;
+        }
+
+        int position = Arrays.binarySearch(sparse, 0, sparseSize, index << 8);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        if (position < sparseSize && (sparse[position] >>> 8) == index) {
+            if ((sparse[position] & 0xff) >= rank) {
+                return false;
+            }
+            sparse[position] = index << 8 | rank;
+        } else {
+            if (sparseSize == SPARSE_MAX_ENTRIES) {
+                promoteToDense();
+                return updateRegister(index, rank);
+            }
+            if (sparseSize == sparse.length) {
+                sparse = Arrays.copyOf(sparse, Math.min(sparse.length * 2, SPARSE_MAX_ENTRIES));
+            }
+            System.arraycopy(sparse, position, sparse, position + 1, sparseSize - position);
+            sparse[position] = index << 8 | rank;
+            sparseSize++;
+        }
+        cachedCardinality = -1;
+        return true;
+    }
+
+    private void promoteToDense() {
+        dense = new byte[DENSE_BYTES];
+        for (int i = 0; i < sparseSize; i++) {
+            setDense(sparse[i] >>> 8, sparse[i] & 0xff);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private int getDense(int index) {
+        int bitOffset = index * REGISTER_BITS;
+        int byteIndex = bitOffset >>> 3;
+        int shift = bitOffset & 7;
+        int word = (dense[byteIndex] & 0xff) | (dense[byteIndex + 1] & 0xff) << 8;
+        return (word >>> shift) & REGISTER_MAX;
+    }
+
+    private void setDense(int index, int value) {
+        int bitOffset = index * REGISTER_BITS;
+        int byteIndex = bitOffset >>> 3;
+        int shift = bitOffset & 7;
+        int word = (dense[byteIndex] & 0xff) | (dense[byteIndex + 1] & 0xff) << 8;
+        word = (word & ~(REGISTER_MAX << shift)) | (value << shift);
+        dense[byteIndex] = (byte) word;
+        dense[byteIndex + 1] = (byte) (word >>> 8);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double previous;
+        double y = 1;
+        double z = x;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (previous != z);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0.0 || x == 1.0) {
+            return 0.0;
+        }
+        double previous;
+        double y = 1.0;
+        double z = 1 - x;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= Math.pow(1 - x, 2) * y;
+        } while (previous != z);
+        return z / 3;
+    }
+
+    private static long murmurHash64A(byte[] data, long seed) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+        int length = data.length;
+        long h = seed ^ (length * m);
+
+        int blocks = length / 8;
+        for (int i = 0; i < blocks; i++) {
+            int offset = i * 8;
+            long k = (data[offset] & 0xffL)
+                | (data[offset + 1] & 0xffL) << 8
+                | (data[offset + 2] & 0xffL) << 16
+                | (data[offset + 3] & 0xffL) << 24
+                | (data[offset + 4] & 0xffL) << 32
+                | (data[offset + 5] & 0xffL) << 40
+                | (data[offset + 6] & 0xffL) << 48
+                | (data[offset + 7] & 0xffL) << 56;
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h ^= k;
+            h *= m;
+        }
+
+        int tail = blocks * 8;
+        switch (length & 7) {
+            case 7: h ^= (data[tail + 6] & 0xffL) << 48;
+            case 6: h ^= (data[tail + 5] & 0xffL) << 40;
+            case 5: h ^= (data[tail + 4] & 0xffL) << 32;
+            case 4: h ^= (data[tail + 3] & 0xffL) << 24;
+            case 3: h ^= (data[tail + 2] & 0xffL) << 16;
+            case 2: h ^= (data[tail + 1] & 0xffL) << 8;
+            case 1: h ^= (data[tail] & 0xffL);
+                h *= m;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+        return h;
+    }
+}
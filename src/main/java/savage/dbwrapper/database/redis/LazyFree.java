@@ -0,0 +1,68 @@
+package savage.dbwrapper.database.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Releases values removed from a {@link RedisKeyspace}. Heap values only need their references dropped,
+ * which the keyspace has already done; values holding native resources (off-heap buffers, mapped files)
+ * implement {@link AutoCloseable} and are closed here. The async variants do that work on a background
+ * thread so UNLINK, FLUSHALL ASYNC and expiry never stall a command handler, however large the value.
+ */
+final class LazyFree {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazyFree.class);
+
+    // Detached keyspaces are walked in batches, yielding in between so the reclaimer stays in the background
+    private static final int BATCH_SIZE = 1024;
+
+    private static final ExecutorService RECLAIMER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Redis-LazyFree");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private LazyFree() {
+    }
+
+    static void free(Object value) {
+        if (value instanceof AutoCloseable resource) {
+            close(resource);
+        }
+    }
+
+    static void freeAsync(Object value) {
+        if (value instanceof AutoCloseable resource) {
+            RECLAIMER.execute(() -> close(resource));
+        }
+    }
+
+    /**
+     * Releases every value of a keyspace map that has already been swapped out of use.
+     */
+    static void freeAsync(Map<String, Object> detached) {
+        RECLAIMER.execute(() -> {
+            int released = 0;
+            for (Object value : detached.values()) {
+                free(value);
+                if (++released % BATCH_SIZE == 0) {
+                    Thread.yield();
+                }
+            }
+            detached.clear();
+            LOGGER.debug("Lazily released {} values", released);
+        });
+    }
+
+    private static void close(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to release Redis value", e);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package savage.dbwrapper.database.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * In-process Redis client for mods running in the same JVM as {@link SimpleRedisServer}.
+ * Commands go straight to the server's keyspace without RESP encoding or socket I/O.
+ * Pub/Sub callbacks are delivered on an executor so publishers never run listener code.
+ */
+public class LocalRedisClient implements RedisClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalRedisClient.class);
+
+    private final SimpleRedisServer server;
+    private final int database;
+    private final RedisKeyspace keyspace;
+    private final Executor callbackExecutor;
+    private final boolean ownsExecutor;
+
+    // Listeners registered with the server, kept so they can be removed on unsubscribe/close
+    private final Map<String, List<BiConsumer<String, String>>> subscriptions = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    public LocalRedisClient(SimpleRedisServer server) {
+        this(server, 0);
+    }
+
+    /**
+     * @param database logical database this client reads and writes, as selected by SELECT
+     */
+    public LocalRedisClient(SimpleRedisServer server, int database) {
+        // Single thread keeps messages in publish order
+        this(server, database, Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Redis-Local-PubSub");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    public LocalRedisClient(SimpleRedisServer server, Executor callbackExecutor) {
+        this(server, 0, callbackExecutor, false);
+    }
+
+    private LocalRedisClient(SimpleRedisServer server, int database, Executor callbackExecutor, boolean ownsExecutor) {
+        this.server = server;
+        this.database = database;
+        this.keyspace = server.getKeyspace(database);
+        this.callbackExecutor = callbackExecutor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    @Override
+    public void auth(String password) throws IOException {
+        ensureOpen();
+        // In-process callers are trusted, but keep the same failure mode as the TCP client
+        if (!server.checkPassword(password)) {
+            throw new IOException("Authentication failed: invalid password");
+        }
+    }
+
+    @Override
+    public String ping() throws IOException {
+        ensureOpen();
+        return "PONG";
+    }
+
+    @Override
+    public void set(String key, String value) throws IOException {
+        call(() -> {
+            keyspace.set(key, value);
+            return null;
+        });
+    }
+
+    @Override
+    public void setWithExpiration(String key, String value, long ttlMillis) throws IOException {
+        call(() -> {
+            keyspace.set(key, value, ttlMillis);
+            return null;
+        });
+    }
+
+    @Override
+    public String get(String key) throws IOException {
+        return call(() -> keyspace.get(key));
+    }
+
+    // Copied both ways: the keyspace keeps the array it is given, and SETBIT modifies stored arrays in place
+    @Override
+    public void setBytes(String key, byte[] value, long ttlMillis) throws IOException {
+        call(() -> {
+            keyspace.set(key, value.clone(), ttlMillis);
+            return null;
+        });
+    }
+
+    @Override
+    public byte[] getBytes(String key) throws IOException {
+        // Already a copy, taken under the key's lock
+        return call(() -> keyspace.getBytes(key));
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return call(() -> keyspace.exists(key));
+    }
+
+    @Override
+    public boolean del(String key) throws IOException {
+        return call(() -> keyspace.delete(key));
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, long ttlMillis) throws IOException {
+        return call(() -> keyspace.setIfAbsent(key, value, ttlMillis));
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expectedValue) throws IOException {
+        return call(() -> keyspace.compareAndDelete(key, expectedValue));
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expectedValue, long ttlMillis) throws IOException {
+        return call(() -> keyspace.compareAndExpire(key, expectedValue, ttlMillis));
+    }
+
+    @Override
+    public boolean acquireLock(String key, String token, long leaseMillis, long timeoutMillis) throws IOException {
+        ensureOpen();
+        try {
+            return server.acquireLock(database, key, token, leaseMillis, timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for lock " + key, e);
+        } catch (RedisWrongTypeException | RedisOutOfMemoryException | IllegalStateException e) {
+            throw new IOException(e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("ERR " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ThrottleResult throttle(String key, long maxBurst, long countPerPeriod, long periodMillis, long quantity) throws IOException {
+        return call(() -> keyspace.throttle(key, maxBurst, countPerPeriod, periodMillis, quantity));
+    }
+
+    @Override
+    public long publish(String channel, String message) throws IOException {
+        ensureOpen();
+        return server.publish(channel, message);
+    }
+
+    @Override
+    public Object fcall(String function, List<String> keys, List<String> args) throws IOException {
+        ensureOpen();
+        try {
+            return server.callFunction(database, function, keys, args);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Registers a listener for messages published on the channel, from either TCP or in-process publishers.
+     * The listener receives (channel, message) on this client's callback executor.
+     */
+    public void subscribe(String channel, BiConsumer<String, String> listener) throws IOException {
+        ensureOpen();
+        BiConsumer<String, String> dispatcher = (ch, message) -> callbackExecutor.execute(() -> {
+            try {
+                listener.accept(ch, message);
+            } catch (Exception e) {
+                LOGGER.error("Subscriber callback for channel {} failed", ch, e);
+            }
+        });
+        subscriptions.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(dispatcher);
+        server.addLocalListener(channel, dispatcher);
+    }
+
+    public void unsubscribe(String channel) {
+        List<BiConsumer<String, String>> dispatchers = subscriptions.remove(channel);
+        if (dispatchers != null) {
+            for (BiConsumer<String, String> dispatcher : dispatchers) {
+                server.removeLocalListener(channel, dispatcher);
+            }
+        }
+    }
+
+    public void unsubscribeAll() {
+        for (String channel : subscriptions.keySet()) {
+            unsubscribe(channel);
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed && server.isRunning();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        unsubscribeAll();
+        if (ownsExecutor && callbackExecutor instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        }
+    }
+
+    // Keyspace errors surface as IOException with the server's error text, as they do from the TCP client
+    private <T> T call(Supplier<T> operation) throws IOException {
+        ensureOpen();
+        try {
+            return operation.get();
+        } catch (RedisWrongTypeException | RedisOutOfMemoryException e) {
+            throw new IOException(e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("ERR " + e.getMessage(), e);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Client is closed");
+        }
+        if (!server.isRunning()) {
+            throw new IOException("Redis server is not running");
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package savage.dbwrapper.database.redis;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fair wait queues behind LOCK.ACQUIRE. A lock is a plain key holding its owner's token with a lease TTL.
+ * Waiters queue per key and the lock is handed to the oldest one as soon as the key is released,
+ * deleted or expires, so nobody has to poll.
+ * <p>
+ * All queue changes happen under the key's stripe lock in {@link RedisKeyspace}.
+ */
+class LockManager {
+    private final RedisKeyspace keyspace;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Deque<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    private static class Waiter {
+        final String token;
+        final long leaseMillis;
+        // Completed with true by the hand-off once the key holds the token, or with false by the waiter giving up
+        // or a failed hand-off; whichever comes first wins
+        final CompletableFuture<Boolean> granted = new CompletableFuture<>();
+
+        Waiter(String token, long leaseMillis) {
+            this.token = token;
+            this.leaseMillis = leaseMillis;
+        }
+    }
+
+    LockManager(RedisKeyspace keyspace, ScheduledExecutorService scheduler) {
+        this.keyspace = keyspace;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Acquires the lock, queueing behind earlier waiters for up to timeoutMillis.
+     * @return true if the key now holds the token
+     */
+    boolean acquire(String key, String token, long leaseMillis, long timeoutMillis) throws InterruptedException {
+        Waiter waiter;
+        try (RedisKeyspace.KeyLock ignored = keyspace.lockKeys(List.of(key))) {
+            Deque<Waiter> queue = waiters.get(key);
+            // Only take a free lock directly when nobody is queued ahead of us
+            if ((queue == null || queue.isEmpty()) && keyspace.setIfAbsent(key, token, leaseMillis)) {
+                return true;
+            }
+            if (timeoutMillis <= 0) {
+                return false;
+            }
+            waiter = new Waiter(token, leaseMillis);
+            waiters.computeIfAbsent(key, k -> new ArrayDeque<>()).add(waiter);
+            scheduleExpiryCheck(key);
+        }
+
+        try {
+            return waiter.granted.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            if (waiter.granted.complete(false)) {
+                removeWaiter(key, waiter);
+                return false;
+            }
+            // Handed over just as we timed out
+            return waiter.granted.join();
+        } catch (InterruptedException e) {
+            if (!waiter.granted.complete(false)) {
+                // We were granted the lock but nobody will use it, give it to the next waiter
+                keyspace.compareAndDelete(key, token);
+            }
+            removeWaiter(key, waiter);
+            throw e;
+        }
+    }
+
+    /**
+     * Called by the keyspace after every change to a key, with the key's stripe lock held.
+     * A null key means the keyspace was flushed.
+     */
+    void onKeyModified(String key) {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        if (key == null) {
+            // Flush (every stripe is held): all locks are gone at once
+            for (String waitingKey : waiters.keySet()) {
+                onKeyModified(waitingKey);
+            }
+            return;
+        }
+        Deque<Waiter> queue = waiters.get(key);
+        if (queue == null) {
+            return;
+        }
+        // exists() also applies a pending expiry, which re-enters here and hands the lock over
+        if (keyspace.exists(key)) {
+            return;
+        }
+
+        Waiter next;
+        while ((next = queue.poll()) != null) {
+            if (next.granted.isDone()) {
+                // Gave up and is on its way out of the queue
+                continue;
+            }
+            // Store the token before telling the waiter, so it never believes it owns a lock the key doesn't hold
+            boolean stored;
+            try {
+                stored = keyspace.setIfAbsent(key, next.token, next.leaseMillis);
+            } catch (RedisOutOfMemoryException e) {
+                stored = false;
+            }
+            if (!stored) {
+                // Over the memory quota: fail this waiter rather than the write or release that triggered the hand-off
+                next.granted.complete(false);
+                break;
+            }
+            if (!next.granted.complete(true)) {
+                // Timed out in the meantime; releasing re-enters here and hands the lock to the next waiter
+                keyspace.compareAndDelete(key, next.token);
+            }
+            break;
+        }
+
+        if (queue.isEmpty()) {
+            waiters.remove(key, queue);
+        } else {
+            scheduleExpiryCheck(key);
+        }
+    }
+
+    void shutdown() {
+        for (Deque<Waiter> queue : waiters.values()) {
+            for (Waiter waiter : queue) {
+                waiter.granted.complete(false);
+            }
+        }
+        waiters.clear();
+    }
+
+    private void removeWaiter(String key, Waiter waiter) {
+        try (RedisKeyspace.KeyLock ignored = keyspace.lockKeys(List.of(key))) {
+            Deque<Waiter> queue = waiters.get(key);
+            if (queue != null) {
+                queue.remove(waiter);
+                if (queue.isEmpty()) {
+                    waiters.remove(key, queue);
+                }
+            }
+        }
+    }
+
+    // Expiry is otherwise only noticed lazily, so wake up when the current lease runs out
+    private void scheduleExpiryCheck(String key) {
+        long ttl = keyspace.ttl(key);
+        if (ttl >= 0 && !scheduler.isShutdown()) {
+            scheduler.schedule(() -> keyspace.exists(key), ttl + 1, TimeUnit.MILLISECONDS);
+        }
+    }
+}
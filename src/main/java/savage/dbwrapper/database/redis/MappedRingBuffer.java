@@ -0,0 +1,246 @@
+package savage.dbwrapper.database.redis;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Single-writer, multi-reader broadcast ring in a memory-mapped file, shared between JVMs on one host.
+ * The writer never waits for readers: each reader keeps its own position and a reader that falls a whole
+ * ring behind loses the overwritten records. Publishing and reading are plain memory accesses ordered
+ * by the two sequence counters in the header, so neither side makes a syscall per message.
+ * <p>
+ * Layout: a header holding the magic, capacity and writer pid, then the tail-intent and tail counters on
+ * their own cache lines, then the data region. Records are {@code [int length][int channel length]
+ * [channel][payload]}, padded to 8 bytes; a record that would straddle the end of the ring is preceded
+ * by a padding record and starts again at offset 0.
+ */
+final class MappedRingBuffer implements AutoCloseable {
+    private static final int MAGIC = 0x44425247; // "DBRG"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int WRITER_PID_OFFSET = 8;
+    // Bumped before a record is written, so readers can tell when what they copied was overwritten meanwhile
+    private static final int TAIL_INTENT_OFFSET = 64;
+    // Bumped once a record is complete; readers consume up to here
+    private static final int TAIL_OFFSET = 128;
+    private static final int HEADER_BYTES = 192;
+
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int PADDING = -1;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    // Writer only: the tail we last published
+    private long tail;
+
+    private MappedRingBuffer(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Creates (or resets) a ring for writing. The capacity is rounded up to a power of two.
+     */
+    static MappedRingBuffer create(Path file, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(capacity, 4096) - 1) << 1;
+        // A fresh file rather than truncating: readers may still have the old one mapped
+        Files.deleteIfExists(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) size);
+            MappedRingBuffer ring = new MappedRingBuffer(channel, buffer, size);
+            buffer.putInt(CAPACITY_OFFSET, size);
+            buffer.putLong(WRITER_PID_OFFSET, ProcessHandle.current().pid());
+            LONGS.setRelease(buffer, TAIL_INTENT_OFFSET, 0L);
+            LONGS.setRelease(buffer, TAIL_OFFSET, 0L);
+            // Written last: readers ignore the file until the header is complete
+            VarHandle.releaseFence();
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            return ring;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps another process's ring for reading.
+     * @return null if the file is not (yet) a complete ring
+     */
+    static MappedRingBuffer open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long fileSize = channel.size();
+            if (fileSize <= HEADER_BYTES) {
+                channel.close();
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.order(ByteOrder.nativeOrder());
+            int capacity = buffer.getInt(CAPACITY_OFFSET);
+            VarHandle.acquireFence();
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC || Integer.bitCount(capacity) != 1 || HEADER_BYTES + (long) capacity != fileSize) {
+                channel.close();
+                return null;
+            }
+            return new MappedRingBuffer(channel, buffer, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int getMaxRecordBytes() {
+        // Keeps a single record from lapping readers on its own
+        return capacity / 4 - RECORD_HEADER_BYTES;
+    }
+
+    long getWriterPid() {
+        return buffer.getLong(WRITER_PID_OFFSET);
+    }
+
+    long getTail() {
+        return (long) LONGS.getAcquire(buffer, TAIL_OFFSET);
+    }
+
+    /**
+     * Appends a record. Only one thread in one process may write to a ring.
+     */
+    void write(byte[] channelName, byte[] payload) {
+        int length = RECORD_HEADER_BYTES + channelName.length + payload.length;
+        if (length > getMaxRecordBytes()) {
+            throw new IllegalArgumentException("Message of " + length + " bytes does not fit in a ring of " + capacity + " bytes");
+        }
+        int aligned = align(length);
+        int offset = (int) (tail & mask);
+        int toEnd = capacity - offset;
+        int padding = aligned > toEnd ? toEnd : 0;
+        long newTail = tail + padding + aligned;
+
+        LONGS.setOpaque(buffer, TAIL_INTENT_OFFSET, newTail);
+        // The intent must be visible before any byte of the region it announces is overwritten
+        VarHandle.releaseFence();
+
+        if (padding > 0) {
+            buffer.putInt(HEADER_BYTES + offset, PADDING);
+            buffer.putInt(HEADER_BYTES + offset + 4, padding);
+            offset = 0;
+        }
+        int position = HEADER_BYTES + offset;
+        buffer.putInt(position, length);
+        buffer.putInt(position + 4, channelName.length);
+        buffer.put(position + RECORD_HEADER_BYTES, channelName);
+        buffer.put(position + RECORD_HEADER_BYTES + channelName.length, payload);
+
+        tail = newTail;
+        LONGS.setRelease(buffer, TAIL_OFFSET, newTail);
+    }
+
+    /**
+     * Receives records read by {@link Reader#poll}, as copies taken out of the ring.
+     */
+    interface RecordHandler {
+        void onRecord(byte[] channelName, byte[] payload);
+    }
+
+    /**
+     * One reader's position in the ring. Not thread-safe; each polling thread needs its own.
+     */
+    final class Reader {
+        private long position;
+        private long laps;
+
+        // New readers start at the current tail: rings carry live messages, not history
+        Reader() {
+            this.position = getTail();
+        }
+
+        /**
+         * Reads up to limit records.
+         * @return number of records handed to the handler
+         */
+        int poll(RecordHandler handler, int limit) {
+            long available = getTail();
+            int read = 0;
+            while (position < available && read < limit) {
+                if (available - position > capacity) {
+                    lapped(available);
+                    return read;
+                }
+                int offset = (int) (position & mask);
+                int base = HEADER_BYTES + offset;
+                int length = buffer.getInt(base);
+                if (length == PADDING) {
+                    int padding = buffer.getInt(base + 4);
+                    if (!isIntact(position) || padding != capacity - offset) {
+                        lapped(getTail());
+                        return read;
+                    }
+                    position += padding;
+                    continue;
+                }
+
+                int channelLength = buffer.getInt(base + 4);
+                if (length < RECORD_HEADER_BYTES || length > capacity - offset || channelLength < 0
+                        || channelLength > length - RECORD_HEADER_BYTES) {
+                    // Garbage only shows up when the writer lapped us mid-read
+                    lapped(getTail());
+                    return read;
+                }
+                byte[] channelName = new byte[channelLength];
+                byte[] payload = new byte[length - RECORD_HEADER_BYTES - channelLength];
+                buffer.get(base + RECORD_HEADER_BYTES, channelName);
+                buffer.get(base + RECORD_HEADER_BYTES + channelLength, payload);
+                if (!isIntact(position)) {
+                    lapped(getTail());
+                    return read;
+                }
+
+                position += align(length);
+                read++;
+                handler.onRecord(channelName, payload);
+            }
+            return read;
+        }
+
+        long getLaps() {
+            return laps;
+        }
+
+        // The bytes at start are only trustworthy if the writer hasn't announced a record reaching them since
+        private boolean isIntact(long start) {
+            VarHandle.loadLoadFence();
+            long intent = (long) LONGS.getVolatile(buffer, TAIL_INTENT_OFFSET);
+            return intent - start <= capacity;
+        }
+
+        private void lapped(long tail) {
+            // How many records were skipped isn't known once they were overwritten, so count laps instead
+            laps++;
+            position = tail;
+        }
+    }
+
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,20 @@
+package savage.dbwrapper.database.redis;
+
+/**
+ * Output buffer limit for one client class, as in Redis' client-output-buffer-limit: a connection is closed
+ * as soon as its unsent output exceeds the hard limit, or once it has stayed above the soft limit for
+ * longer than the soft period. A limit of 0 disables that check.
+ */
+final class OutputBufferLimit {
+    static final OutputBufferLimit UNLIMITED = new OutputBufferLimit(0, 0, 0);
+
+    final long hardBytes;
+    final long softBytes;
+    final long softMillis;
+
+    OutputBufferLimit(long hardBytes, long softBytes, long softMillis) {
+        this.hardBytes = hardBytes;
+        this.softBytes = softBytes;
+        this.softMillis = softMillis;
+    }
+}
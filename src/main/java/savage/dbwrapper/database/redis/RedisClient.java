@@ -0,0 +1,98 @@
+package savage.dbwrapper.database.redis;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Common command API shared by the TCP {@link SimpleRedisClient} and the in-process {@link LocalRedisClient}.
+ */
+public interface RedisClient extends AutoCloseable {
+    void auth(String password) throws IOException;
+
+    String ping() throws IOException;
+
+    void set(String key, String value) throws IOException;
+
+    void setWithExpiration(String key, String value, long ttlMillis) throws IOException;
+
+    String get(String key) throws IOException;
+
+    /**
+     * Stores a binary value as is, without any text encoding.
+     * @param ttlMillis expiry in milliseconds, or 0 for none
+     */
+    void setBytes(String key, byte[] value, long ttlMillis) throws IOException;
+
+    /**
+     * @return the exact bytes stored under the key, or null if it doesn't exist
+     */
+    byte[] getBytes(String key) throws IOException;
+
+    /**
+     * Encodes the value with the codec and stores the bytes.
+     */
+    default <T> void set(String key, T value, RedisCodec<T> codec) throws IOException {
+        setBytes(key, codec.encode(value), 0);
+    }
+
+    default <T> void setWithExpiration(String key, T value, RedisCodec<T> codec, long ttlMillis) throws IOException {
+        setBytes(key, codec.encode(value), ttlMillis);
+    }
+
+    /**
+     * @return the decoded value, or null if the key doesn't exist
+     */
+    default <T> T get(String key, RedisCodec<T> codec) throws IOException {
+        byte[] bytes = getBytes(key);
+        return bytes == null ? null : codec.decode(bytes);
+    }
+
+    boolean exists(String key) throws IOException;
+
+    boolean del(String key) throws IOException;
+
+    /**
+     * SET NX with an optional expiry (ttlMillis &lt;= 0 for none).
+     * @return true if the key was absent and is now set
+     */
+    boolean setIfAbsent(String key, String value, long ttlMillis) throws IOException;
+
+    /**
+     * Deletes the key only if it still holds the expected value (LOCK.RELEASE).
+     */
+    boolean compareAndDelete(String key, String expectedValue) throws IOException;
+
+    /**
+     * Resets the key's expiry only if it still holds the expected value (LOCK.RENEW).
+     */
+    boolean compareAndExpire(String key, String expectedValue, long ttlMillis) throws IOException;
+
+    /**
+     * Acquires a lease lock (LOCK.ACQUIRE), waiting in a fair queue for up to timeoutMillis.
+     * The call blocks the connection while waiting.
+     * @return true if the key now holds the token
+     */
+    boolean acquireLock(String key, String token, long leaseMillis, long timeoutMillis) throws IOException;
+
+    /**
+     * Atomic GCRA rate limiting: allows bursts of up to maxBurst + 1 and refills at countPerPeriod per periodMillis.
+     * @param quantity cost of this request (usually 1; 0 checks without consuming)
+     */
+    ThrottleResult throttle(String key, long maxBurst, long countPerPeriod, long periodMillis, long quantity) throws IOException;
+
+    /**
+     * @return number of subscribers that received the message
+     */
+    long publish(String channel, String message) throws IOException;
+
+    /**
+     * Calls a server-side function registered with {@link RedisManager#registerFunction(String, RedisFunction)}.
+     * @return the function's reply (String, Long, List or null)
+     */
+    Object fcall(String function, List<String> keys, List<String> args) throws IOException;
+
+    boolean isConnected();
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,13 @@
+package savage.dbwrapper.database.redis;
+
+import java.io.IOException;
+
+/**
+ * Converts values to and from the bytes stored under a key, for the typed get/set methods of {@link RedisClient}.
+ * Built-in codecs live in {@link RedisCodecs}.
+ */
+public interface RedisCodec<T> {
+    byte[] encode(T value) throws IOException;
+
+    T decode(byte[] bytes) throws IOException;
+}
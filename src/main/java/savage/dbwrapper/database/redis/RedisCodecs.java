@@ -0,0 +1,420 @@
+package savage.dbwrapper.database.redis;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Built-in {@link RedisCodec}s. Values are encoded into a per-thread buffer that is reused between calls,
+ * so the only allocation per encode is the final byte array sent to Redis.
+ * <ul>
+ *   <li>{@link #UTF8}: plain text, readable by the String methods too</li>
+ *   <li>{@link #UUID}: 16 raw bytes instead of a 36 character string</li>
+ *   <li>{@link #NBT}: a compound tag in Minecraft's binary NBT format</li>
+ *   <li>{@link #record}: hand-written records of varint numbers and length-prefixed strings and bytes</li>
+ *   <li>{@link #compressed}: wraps another codec and deflates values above a size threshold</li>
+ * </ul>
+ */
+public final class RedisCodecs {
+    // Buffers that grew past this are dropped after use rather than pinned to the thread
+    private static final int MAX_POOLED_BYTES = 64 * 1024;
+    // Same limit as a Redis bulk string; guards against allocating for a corrupt length
+    private static final int MAX_VALUE_BYTES = 512 * 1024 * 1024;
+    // NBT decoding budget, in the heap bytes NbtSizeTracker estimates. A real tag takes at most a few dozen times
+    // its encoded size, so a corrupt value can't make the decoder allocate far more than its length suggests
+    private static final long NBT_HEAP_BYTES_PER_BYTE = 64;
+    private static final long MIN_NBT_HEAP_BYTES = 2 * 1024 * 1024;
+
+    private static final byte UNCOMPRESSED = 0;
+    private static final byte DEFLATED = 1;
+
+    private static final ThreadLocal<RecordWriter> WRITERS = ThreadLocal.withInitial(RecordWriter::new);
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    private RedisCodecs() {
+    }
+
+    public static final RedisCodec<String> UTF8 = new RedisCodec<>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    public static final RedisCodec<UUID> UUID = new RedisCodec<>() {
+        @Override
+        public byte[] encode(UUID value) {
+            byte[] bytes = new byte[16];
+            putLong(bytes, 0, value.getMostSignificantBits());
+            putLong(bytes, 8, value.getLeastSignificantBits());
+            return bytes;
+        }
+
+        @Override
+        public UUID decode(byte[] bytes) throws IOException {
+            if (bytes.length != 16) {
+                throw new IOException("Expected 16 bytes for a UUID, got " + bytes.length);
+            }
+            return new UUID(getLong(bytes, 0), getLong(bytes, 8));
+        }
+    };
+
+    public static final RedisCodec<NbtCompound> NBT = new RedisCodec<>() {
+        @Override
+        public byte[] encode(NbtCompound value) throws IOException {
+            return encodeWith(writer -> NbtIo.write(value, new DataOutputStream(writer)));
+        }
+
+        @Override
+        public NbtCompound decode(byte[] bytes) throws IOException {
+            long budget = Math.max(MIN_NBT_HEAP_BYTES, bytes.length * NBT_HEAP_BYTES_PER_BYTE);
+            try {
+                return NbtIo.readCompound(new DataInputStream(new ByteArrayInputStream(bytes)), NbtSizeTracker.of(budget));
+            } catch (RuntimeException e) {
+                // Going over the budget or nesting too deep is reported unchecked
+                throw new IOException("Invalid NBT value: " + e.getMessage(), e);
+            }
+        }
+    };
+
+    @FunctionalInterface
+    public interface RecordEncoder<T> {
+        void encode(T value, RecordWriter out) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface RecordDecoder<T> {
+        T decode(RecordReader in) throws IOException;
+    }
+
+    /**
+     * A codec for records written field by field. Fields have no tags, so the decoder must read them back
+     * in the order they were written; new fields can be appended and read only while {@link RecordReader#hasRemaining()}.
+     */
+    public static <T> RedisCodec<T> record(RecordEncoder<T> encoder, RecordDecoder<T> decoder) {
+        return new RedisCodec<>() {
+            @Override
+            public byte[] encode(T value) throws IOException {
+                return encodeWith(writer -> encoder.encode(value, writer));
+            }
+
+            @Override
+            public T decode(byte[] bytes) throws IOException {
+                return decoder.decode(new RecordReader(bytes));
+            }
+        };
+    }
+
+    /**
+     * Wraps a codec so values of at least thresholdBytes are deflated when that makes them smaller.
+     * Every value gets a one-byte header, so existing uncompressed data can't be read through this codec.
+     */
+    public static <T> RedisCodec<T> compressed(RedisCodec<T> codec, int thresholdBytes) {
+        return new RedisCodec<>() {
+            @Override
+            public byte[] encode(T value) throws IOException {
+                byte[] raw = codec.encode(value);
+                if (raw.length >= thresholdBytes) {
+                    byte[] deflated = deflate(raw);
+                    if (deflated != null) {
+                        return deflated;
+                    }
+                }
+                byte[] framed = new byte[raw.length + 1];
+                framed[0] = UNCOMPRESSED;
+                System.arraycopy(raw, 0, framed, 1, raw.length);
+                return framed;
+            }
+
+            @Override
+            public T decode(byte[] bytes) throws IOException {
+                if (bytes.length == 0) {
+                    throw new IOException("Missing compression header");
+                }
+                if (bytes[0] == UNCOMPRESSED) {
+                    return codec.decode(Arrays.copyOfRange(bytes, 1, bytes.length));
+                }
+                if (bytes[0] == DEFLATED) {
+                    return codec.decode(inflate(bytes));
+                }
+                throw new IOException("Unknown compression header " + bytes[0]);
+            }
+        };
+    }
+
+    // [DEFLATED][varint raw length][deflate stream], or null if compressing didn't save anything
+    private static byte[] deflate(byte[] raw) throws IOException {
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        return encodeWith(writer -> {
+            writer.write(DEFLATED);
+            writer.writeVarInt(raw.length);
+            byte[] chunk = new byte[Math.min(raw.length, 8192)];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                writer.write(chunk, 0, length);
+                if (writer.size() >= raw.length + 1) {
+                    throw new NotSmaller();
+                }
+            }
+        });
+    }
+
+    private static byte[] inflate(byte[] bytes) throws IOException {
+        RecordReader header = new RecordReader(bytes);
+        header.position = 1;
+        int length = header.readVarInt();
+        if (length < 0 || length > MAX_VALUE_BYTES) {
+            throw new IOException("Invalid uncompressed length " + length);
+        }
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(bytes, header.position, bytes.length - header.position);
+        byte[] raw = new byte[length];
+        try {
+            int read = 0;
+            while (read < length) {
+                int count = inflater.inflate(raw, read, length - read);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                read += count;
+            }
+            if (read != length) {
+                throw new EOFException("Compressed value is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed value", e);
+        }
+        return raw;
+    }
+
+    @FunctionalInterface
+    private interface WriterBody {
+        void write(RecordWriter writer) throws IOException;
+    }
+
+    // Runs the body against this thread's pooled buffer and copies the result out
+    private static byte[] encodeWith(WriterBody body) throws IOException {
+        RecordWriter writer = WRITERS.get();
+        // A codec used from inside another codec's encoder gets its own buffer
+        if (writer.inUse) {
+            writer = new RecordWriter();
+        }
+        writer.reset();
+        writer.inUse = true;
+        try {
+            body.write(writer);
+            return writer.toByteArray();
+        } catch (NotSmaller e) {
+            return null;
+        } finally {
+            writer.inUse = false;
+            if (writer.capacity() > MAX_POOLED_BYTES) {
+                WRITERS.remove();
+            }
+        }
+    }
+
+    // Aborts deflate() as soon as the output is no smaller than the input
+    private static final class NotSmaller extends RuntimeException {
+        NotSmaller() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Appends record fields. Integers are zigzag varints, so small values of either sign take one byte;
+     * strings and byte arrays are prefixed with their length.
+     */
+    public static final class RecordWriter extends ByteArrayOutputStream {
+        private boolean inUse;
+
+        private RecordWriter() {
+            super(256);
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+
+        public RecordWriter writeVarInt(int value) {
+            writeUnsignedVarLong(Integer.toUnsignedLong((value << 1) ^ (value >> 31)));
+            return this;
+        }
+
+        public RecordWriter writeVarLong(long value) {
+            writeUnsignedVarLong((value << 1) ^ (value >> 63));
+            return this;
+        }
+
+        public RecordWriter writeBoolean(boolean value) {
+            write(value ? 1 : 0);
+            return this;
+        }
+
+        public RecordWriter writeDouble(double value) {
+            writeLong(Double.doubleToRawLongBits(value));
+            return this;
+        }
+
+        public RecordWriter writeString(String value) {
+            return writeByteArray(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public RecordWriter writeByteArray(byte[] value) {
+            writeUnsignedVarLong(value.length);
+            write(value, 0, value.length);
+            return this;
+        }
+
+        public RecordWriter writeUuid(UUID value) {
+            writeLong(value.getMostSignificantBits());
+            writeLong(value.getLeastSignificantBits());
+            return this;
+        }
+
+        private void writeLong(long bits) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (bits >>> shift));
+            }
+        }
+
+        private void writeUnsignedVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+    }
+
+    /**
+     * Reads fields written by {@link RecordWriter}, in the same order.
+     */
+    public static final class RecordReader {
+        private final byte[] bytes;
+        private int position;
+
+        private RecordReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public boolean hasRemaining() {
+            return position < bytes.length;
+        }
+
+        public int readVarInt() throws IOException {
+            long raw = readUnsignedVarLong();
+            if (raw >>> 32 != 0) {
+                throw new IOException("Varint too long for an int");
+            }
+            int value = (int) raw;
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        public long readVarLong() throws IOException {
+            long raw = readUnsignedVarLong();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        public boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        public double readDouble() throws IOException {
+            require(8);
+            double value = Double.longBitsToDouble(getLong(bytes, position));
+            position += 8;
+            return value;
+        }
+
+        public String readString() throws IOException {
+            int length = readLength();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        public byte[] readByteArray() throws IOException {
+            int length = readLength();
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        public UUID readUuid() throws IOException {
+            require(16);
+            UUID value = new UUID(getLong(bytes, position), getLong(bytes, position + 8));
+            position += 16;
+            return value;
+        }
+
+        private int readLength() throws IOException {
+            long length = readUnsignedVarLong();
+            if (length > bytes.length - position) {
+                throw new EOFException("Field length " + length + " runs past the end of the record");
+            }
+            return (int) length;
+        }
+
+        private long readUnsignedVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private int readByte() throws IOException {
+            require(1);
+            return bytes[position++] & 0xFF;
+        }
+
+        private void require(int count) throws EOFException {
+            if (bytes.length - position < count) {
+                throw new EOFException("Record ends early");
+            }
+        }
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,324 @@
+package savage.dbwrapper.database.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of blocking {@link SimpleRedisClient} connections for callers that want simple
+ * request/response semantics without sharing one unsafe connection. New connections are authenticated
+ * automatically, idle ones are PINGed before reuse and closed after idling too long, and at least
+ * {@code minIdle} are kept warm.
+ * <p>
+ * Borrowers must leave a connection as they found it: switch back after SELECT, and don't leave a WATCH,
+ * a blocking command or client-side caching behind.
+ */
+public class RedisConnectionPool implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisConnectionPool.class);
+
+    // Connections idle for less than this are trusted without a PING on borrow
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 5000;
+    private static final long MAINTENANCE_INTERVAL_MILLIS = 5000;
+
+    private final Supplier<SimpleRedisClient> factory;
+    private final String password;
+    private final int maxTotal;
+    private final int minIdle;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+
+    // Free connections, most recently returned first so the warm ones get reused
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    // One permit per borrowed connection; borrowers wait here when the pool is exhausted
+    private final Semaphore permits;
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private static class PooledConnection {
+        final SimpleRedisClient client;
+        long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(SimpleRedisClient client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * A borrowed connection; closing it returns it to the pool.
+     */
+    public class Lease implements AutoCloseable {
+        private final PooledConnection connection;
+        private boolean released = false;
+        private boolean broken = false;
+
+        private Lease(PooledConnection connection) {
+            this.connection = connection;
+        }
+
+        public SimpleRedisClient getClient() {
+            return connection.client;
+        }
+
+        /**
+         * Marks the connection unusable (e.g. after an I/O error) so it is closed instead of reused.
+         */
+        public void invalidate() {
+            broken = true;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                giveBack(connection, broken);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface PooledOperation<T> {
+        T apply(SimpleRedisClient client) throws IOException;
+    }
+
+    /**
+     * @param factory creates unconnected clients for the server
+     * @param password sent with AUTH on every new connection; null or empty for none
+     */
+    public RedisConnectionPool(Supplier<SimpleRedisClient> factory, String password, int maxTotal, int minIdle,
+                               long borrowTimeoutMillis, long idleTimeoutMillis) {
+        this.factory = factory;
+        this.password = password;
+        this.maxTotal = Math.max(1, maxTotal);
+        this.minIdle = Math.max(0, Math.min(minIdle, this.maxTotal));
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(this.maxTotal, true);
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Redis-Pool-Maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, 0, MAINTENANCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the borrow timeout when all of them are in use.
+     * Use with try-with-resources.
+     */
+    public Lease borrow() throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new IOException("Timed out after " + borrowTimeoutMillis + "ms waiting for a Redis connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a Redis connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (isUsable(connection)) {
+                    break;
+                }
+                destroy(connection);
+            }
+            if (connection == null) {
+                connection = create();
+            }
+            borrowed.incrementAndGet();
+            return new Lease(connection);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the operation on a pooled connection. Connections that fail with an I/O error are discarded.
+     */
+    public <T> T execute(PooledOperation<T> operation) throws IOException {
+        try (Lease lease = borrow()) {
+            try {
+                return operation.apply(lease.getClient());
+            } catch (IOException e) {
+                lease.invalidate();
+                throw e;
+            }
+        }
+    }
+
+    private boolean isUsable(PooledConnection connection) {
+        if (!connection.client.isConnected()) {
+            return false;
+        }
+        if (System.currentTimeMillis() - connection.lastUsed < VALIDATE_AFTER_IDLE_MILLIS) {
+            return true;
+        }
+        try {
+            connection.client.ping();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            validationFailures.incrementAndGet();
+            return false;
+        }
+    }
+
+    private PooledConnection create() throws IOException {
+        SimpleRedisClient client = factory.get();
+        try {
+            client.connect();
+            if (password != null && !password.isEmpty()) {
+                client.auth(password);
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                client.close();
+            } catch (IOException ignored) {
+                // Already failing
+            }
+            throw e;
+        }
+        created.incrementAndGet();
+        return new PooledConnection(client);
+    }
+
+    private void giveBack(PooledConnection connection, boolean broken) {
+        if (broken || closed || !connection.client.isConnected()) {
+            destroy(connection);
+        } else {
+            connection.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(connection);
+        }
+        permits.release();
+    }
+
+    private void destroy(PooledConnection connection) {
+        destroyed.incrementAndGet();
+        try {
+            connection.client.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error closing pooled Redis connection", e);
+        }
+    }
+
+    // Closes connections idle past the timeout (down to minIdle), drops dead ones and tops the pool up to minIdle
+    private void maintain() {
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // Oldest idle connections sit at the tail
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext()) {
+            PooledConnection connection = iterator.next();
+            boolean expired = idleTimeoutMillis > 0 && now - connection.lastUsed > idleTimeoutMillis && idle.size() > minIdle;
+            if ((expired || !connection.client.isConnected()) && idle.removeFirstOccurrence(connection)) {
+                destroy(connection);
+            }
+        }
+
+        while (idle.size() < minIdle && idle.size() + getActiveCount() < maxTotal && permits.tryAcquire()) {
+            try {
+                idle.offerLast(create());
+            } catch (IOException e) {
+                LOGGER.warn("Failed to open pooled Redis connection: {}", e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return maxTotal - permits.availablePermits();
+    }
+
+    public long getBorrowCount() {
+        return borrowed.get();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyed.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailures.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = borrowed.get() + timeouts.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RedisConnectionPool[active=%d, idle=%d, max=%d, borrowed=%d, created=%d, destroyed=%d, "
+                + "validationFailures=%d, timeouts=%d, avgWait=%.2fms, maxWait=%.2fms]",
+            getActiveCount(), getIdleCount(), maxTotal, getBorrowCount(), getCreatedCount(), getDestroyedCount(),
+            getValidationFailureCount(), getTimeoutCount(), getAverageWaitMillis(), getMaxWaitMillis());
+    }
+
+    /**
+     * Closes idle connections now; borrowed ones are closed as they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        maintenance.shutdownNow();
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            destroy(connection);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package savage.dbwrapper.database.redis;
+
+import java.util.List;
+
+/**
+ * Server-side Java function callable with {@code FCALL name numkeys key... arg...}.
+ * Register it through {@link RedisManager#registerFunction(String, RedisFunction)}.
+ * <p>
+ * The function runs with the lock stripes of all declared keys held, so a read-modify-write over
+ * several keys is atomic and takes a single round trip. Only touch the keys passed in {@code keys}.
+ */
+@FunctionalInterface
+public interface RedisFunction {
+    /**
+     * @return the reply: null, a String, a Number or Boolean (sent as an integer), or a List of those
+     */
+    Object call(RedisKeyspace keyspace, List<String> keys, List<String> args) throws Exception;
+}
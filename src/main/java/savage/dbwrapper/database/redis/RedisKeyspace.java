@@ -0,0 +1,950 @@
+package savage.dbwrapper.database.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory key/value store backing {@link SimpleRedisServer}.
+ * Shared by the network command handlers and {@link LocalRedisClient}.
+ * <p>
+ * Every key maps to one of a fixed set of lock stripes. Single-key operations take their stripe,
+ * and multi-key operations (MULTI/EXEC) take all of their stripes in a fixed order via
+ * {@link #lockKeys(Collection)}, so they are atomic without blocking unrelated keys.
+ * <p>
+ * Values are Strings, byte arrays (bitmaps), {@link HyperLogLog} counters or THROTTLE rate limiter cells.
+ * <p>
+ * Each logical database (SELECT) is its own keyspace, with an optional memory quota enforced by
+ * evicting keys according to its {@link EvictionPolicy}. Memory use is an estimate of the heap held
+ * by keys and values, good enough to compare databases and keep one from crowding out the others.
+ */
+public class RedisKeyspace {
+    private static final int LOCK_STRIPES = 256;
+    // Approximate per-entry cost of the map node, key object and boxed bookkeeping
+    private static final long ENTRY_OVERHEAD = 72;
+    // Keys sampled per eviction, as Redis' maxmemory-samples
+    private static final int EVICTION_SAMPLES = 5;
+    // Best candidates kept between evictions, as Redis' eviction pool, so a sample is compared with more than its neighbours
+    private static final int EVICTION_POOL_SIZE = 16;
+    private static final int EVICTION_ATTEMPTS = 8;
+
+    // Replaced wholesale (under every stripe lock) by FLUSHALL, so a flush is O(1) for the caller
+    private volatile Map<String, Object> dataStore = new ConcurrentHashMap<>();
+    private volatile Map<String, Long> expirationTimes = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    // Version stamps for WATCHed keys only, so unwatched writes don't pay for bookkeeping
+    private final Map<String, Integer> watchCounts = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicLong versionCounter = new AtomicLong();
+
+    // Notified after a key is written, deleted or expired (used for client tracking invalidation)
+    private volatile Consumer<String> modificationListener;
+
+    // Resumable position of the incremental expiry sweep; only touched by the cleanup thread
+    private Iterator<Map.Entry<String, Long>> expiryCursor;
+    private Map<String, Long> expiryCursorSource;
+
+    // Memory quota (0 = unlimited) and what happens when a write would exceed it
+    private volatile long maxMemory = 0;
+    private volatile EvictionPolicy evictionPolicy = EvictionPolicy.NOEVICTION;
+    private final AtomicLong usedMemory = new AtomicLong();
+    // Logical access clock per key, only kept for the LRU policies; a counter orders accesses within the same millisecond
+    private volatile Map<String, Long> lastAccess = new ConcurrentHashMap<>();
+    private final AtomicLong accessClock = new AtomicLong();
+    // Rotating sample position for eviction, guarded by evictionLock
+    private final Object evictionLock = new Object();
+    private Iterator<String> evictionCursor;
+    private Map<String, ?> evictionCursorSource;
+    private final List<String> evictionPool = new ArrayList<>();
+
+    // Statistics for INFO
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictedKeys = new LongAdder();
+
+    public RedisKeyspace() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public String get(String key) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            expireIfNeeded(key);
+            Object value = dataStore.get(key);
+            recordAccess(key, value);
+            if (value == null || value instanceof String) {
+                return (String) value;
+            }
+            return new String(asBytes(value), StandardCharsets.UTF_8);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Binary-safe read of a string or bitmap value. Returns a copy, as SETBIT changes bitmaps in place.
+     */
+    public byte[] getBytes(String key) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            byte[] bytes = readBytes(key);
+            return bytes == null ? null : bytes.clone();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void set(String key, String value) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            putEntry(key, value);
+            // Remove any existing expiration if simple SET is used
+            expirationTimes.remove(key);
+            keyModified(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void set(String key, String value, long ttlMillis) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            putEntry(key, value);
+            expirationTimes.put(key, System.currentTimeMillis() + ttlMillis);
+            keyModified(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a binary value. The array is kept as is, so callers must not modify it afterwards.
+     * @param ttlMillis expiry in milliseconds, or 0 for none
+     */
+    public void set(String key, byte[] value, long ttlMillis) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            store(key, value, ttlMillis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * SET NX: stores the value only if the key does not exist.
+     * @param ttlMillis expiry in milliseconds, or 0 for none
+     * @return true if the value was stored
+     */
+    public boolean setIfAbsent(String key, String value, long ttlMillis) {
+        return storeIf(key, value, ttlMillis, false);
+    }
+
+    public boolean setIfAbsent(String key, byte[] value, long ttlMillis) {
+        return storeIf(key, value, ttlMillis, false);
+    }
+
+    /**
+     * SET XX: stores the value only if the key already exists.
+     * @param ttlMillis expiry in milliseconds, or 0 for none
+     * @return true if the value was stored
+     */
+    public boolean setIfPresent(String key, String value, long ttlMillis) {
+        return storeIf(key, value, ttlMillis, true);
+    }
+
+    public boolean setIfPresent(String key, byte[] value, long ttlMillis) {
+        return storeIf(key, value, ttlMillis, true);
+    }
+
+    private boolean storeIf(String key, Object value, long ttlMillis, boolean mustExist) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            expireIfNeeded(key);
+            if (dataStore.containsKey(key) != mustExist) {
+                return false;
+            }
+            store(key, value, ttlMillis);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the key only if it currently holds the expected value (safe lock release).
+     */
+    public boolean compareAndDelete(String key, String expected) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            if (!expected.equals(get(key))) {
+                return false;
+            }
+            return delete(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resets the key's TTL only if it currently holds the expected value (lease renewal).
+     */
+    public boolean compareAndExpire(String key, String expected, long ttlMillis) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            if (!expected.equals(get(key))) {
+                return false;
+            }
+            expirationTimes.put(key, System.currentTimeMillis() + ttlMillis);
+            keyModified(key);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return remaining time to live in milliseconds, -1 if the key has no expiry, -2 if it does not exist
+     */
+    public long ttl(String key) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            expireIfNeeded(key);
+            if (!dataStore.containsKey(key)) {
+                return -2;
+            }
+            Long expiresAt = expirationTimes.get(key);
+            return expiresAt == null ? -1 : Math.max(0, expiresAt - System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean delete(String key) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            Object value = removeEntry(key);
+            expirationTimes.remove(key);
+            if (value != null) {
+                keyModified(key);
+                LazyFree.free(value);
+            }
+            return value != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * UNLINK: removes the key immediately and releases its value in the background.
+     */
+    public boolean unlink(String key) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            expireIfNeeded(key);
+            Object value = removeEntry(key);
+            expirationTimes.remove(key);
+            if (value != null) {
+                keyModified(key);
+                LazyFree.freeAsync(value);
+            }
+            return value != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * FLUSHALL: removes every key. The old maps are swapped out in O(1); with async they are released
+     * on the lazy-free thread, otherwise on the calling thread.
+     */
+    public void flush(boolean async) {
+        Map<String, Object> detached;
+        try (KeyLock ignored = lockAll()) {
+            detached = dataStore;
+            dataStore = new ConcurrentHashMap<>();
+            expirationTimes = new ConcurrentHashMap<>();
+            lastAccess = new ConcurrentHashMap<>();
+            usedMemory.set(0);
+
+            // Every watched key changed; a null key tells the listener that everything did
+            for (String watched : watchCounts.keySet()) {
+                versions.put(watched, versionCounter.incrementAndGet());
+            }
+            Consumer<String> listener = modificationListener;
+            if (listener != null) {
+                listener.accept(null);
+            }
+        }
+
+        if (async) {
+            LazyFree.freeAsync(detached);
+        } else {
+            for (Object value : detached.values()) {
+                LazyFree.free(value);
+            }
+        }
+    }
+
+    public boolean exists(String key) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            expireIfNeeded(key);
+            return dataStore.containsKey(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets or clears a bit, creating or growing the bitmap as needed. String values are converted in place.
+     * @return the previous bit
+     */
+    public int setBit(String key, long offset, int bit) {
+        checkBitOffset(offset);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            expireIfNeeded(key);
+            Object value = dataStore.get(key);
+            byte[] bitmap = value == null ? null : asBytes(value);
+            int previous = Bitmaps.getBit(bitmap, offset);
+            putEntry(key, Bitmaps.setBit(bitmap, offset, bit));
+            keyModified(key);
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getBit(String key, long offset) {
+        checkBitOffset(offset);
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            return Bitmaps.getBit(readBytes(key), offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts set bits between byte offsets start and end (inclusive). Negative offsets count from the end.
+     */
+    public long bitCount(String key, long start, long end) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            expireIfNeeded(key);
+            Object value = dataStore.get(key);
+            if (value == null) {
+                return 0;
+            }
+            byte[] bitmap = asBytes(value);
+            long length = bitmap.length;
+            if (start < 0) start = Math.max(0, length + start);
+            if (end < 0) end = length + end;
+            end = Math.min(end, length - 1);
+            if (start > end) {
+                return 0;
+            }
+            return Bitmaps.bitCount(bitmap, (int) start, (int) end);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores the AND/OR/XOR/NOT of the source bitmaps in the destination key.
+     * @return length of the result in bytes
+     */
+    public int bitOp(String operation, String destination, List<String> sources) {
+        if ("NOT".equals(operation) && sources.size() != 1) {
+            throw new IllegalArgumentException("BITOP NOT must be called with a single source key.");
+        }
+        List<String> keys = new ArrayList<>(sources);
+        keys.add(destination);
+        try (KeyLock ignored = lockKeys(keys)) {
+            byte[][] bitmaps = new byte[sources.size()][];
+            for (int i = 0; i < bitmaps.length; i++) {
+                bitmaps[i] = readBytes(sources.get(i));
+            }
+            byte[] result = Bitmaps.bitOp(operation, bitmaps);
+            if (result.length == 0) {
+                delete(destination);
+            } else {
+                putValue(destination, result);
+            }
+            return result.length;
+        }
+    }
+
+    /**
+     * Adds elements to the HyperLogLog at key, creating it if needed.
+     * @return true if the key was created or the estimate may have changed
+     */
+    public boolean pfAdd(String key, Collection<String> elements) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            HyperLogLog hll = getHyperLogLog(key);
+            HyperLogLog target = writableHyperLogLog(hll);
+            boolean changed = hll == null;
+            for (String element : elements) {
+                changed |= target.add(element);
+            }
+            if (changed) {
+                putEntry(key, target);
+                keyModified(key);
+            }
+            return changed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimated number of distinct elements across the HyperLogLogs at the given keys.
+     */
+    public long pfCount(Collection<String> keys) {
+        try (KeyLock ignored = lockKeys(keys)) {
+            if (keys.size() == 1) {
+                HyperLogLog hll = getHyperLogLog(keys.iterator().next());
+                return hll == null ? 0 : hll.count();
+            }
+            HyperLogLog union = new HyperLogLog();
+            for (String key : keys) {
+                HyperLogLog hll = getHyperLogLog(key);
+                if (hll != null) {
+                    union.merge(hll);
+                }
+            }
+            return union.count();
+        }
+    }
+
+    /**
+     * Merges the source HyperLogLogs into the destination (which is included in the union if it exists).
+     */
+    public void pfMerge(String destination, Collection<String> sources) {
+        List<String> keys = new ArrayList<>(sources);
+        keys.add(destination);
+        try (KeyLock ignored = lockKeys(keys)) {
+            HyperLogLog target = writableHyperLogLog(getHyperLogLog(destination));
+            for (String source : sources) {
+                HyperLogLog hll = getHyperLogLog(source);
+                if (hll != null && hll != target) {
+                    target.merge(hll);
+                }
+            }
+            putValue(destination, target);
+        }
+    }
+
+    /**
+     * GCRA rate limiting (THROTTLE): allows up to maxBurst + 1 requests at once, refilling at
+     * countPerPeriod per periodMillis. The key holds only the limiter's theoretical arrival time
+     * and expires once the limiter has fully drained.
+     */
+    public ThrottleResult throttle(String key, long maxBurst, long countPerPeriod, long periodMillis, long quantity) {
+        // Long.MAX_VALUE burst would overflow the limit of maxBurst + 1
+        if (maxBurst < 0 || maxBurst == Long.MAX_VALUE || countPerPeriod <= 0 || periodMillis <= 0 || quantity < 0) {
+            throw new IllegalArgumentException("invalid throttle parameters");
+        }
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            expireIfNeeded(key);
+            Object value = dataStore.get(key);
+            if (value != null && !(value instanceof Gcra.Cell)) {
+                throw new RedisWrongTypeException();
+            }
+            long now = System.nanoTime();
+            Gcra.Cell cell = (Gcra.Cell) value;
+            boolean created = cell == null;
+            if (created) {
+                cell = new Gcra.Cell();
+                cell.theoreticalArrivalNanos = now;
+            }
+            ThrottleResult result = Gcra.apply(cell, now, maxBurst, countPerPeriod, TimeUnit.MILLISECONDS.toNanos(periodMillis), quantity);
+
+            // Denied requests and zero-quantity peeks leave the limiter untouched
+            if (result.isAllowed() && quantity > 0) {
+                if (created) {
+                    putEntry(key, cell);
+                }
+                expirationTimes.put(key, System.currentTimeMillis() + result.getResetAfterMillis());
+                keyModified(key);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the memory quota for this database; 0 removes it.
+     */
+    public void setMemoryQuota(long maxMemoryBytes, EvictionPolicy policy) {
+        this.evictionPolicy = policy;
+        this.maxMemory = maxMemoryBytes;
+        if (!policy.isLru()) {
+            lastAccess.clear();
+        }
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Estimated heap used by this database's keys and values, in bytes.
+     */
+    public long getUsedMemory() {
+        return usedMemory.get();
+    }
+
+    public long getEvictedKeys() {
+        return evictedKeys.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getExpiringKeyCount() {
+        return expirationTimes.size();
+    }
+
+    public Set<String> keys() {
+        Set<String> keys = new HashSet<>(dataStore.keySet());
+        // Filter expired
+        long now = System.currentTimeMillis();
+        keys.removeIf(k -> {
+            Long expiresAt = expirationTimes.get(k);
+            return expiresAt != null && now > expiresAt;
+        });
+        return keys;
+    }
+
+    public int size() {
+        return dataStore.size();
+    }
+
+    private KeyLock lockAll() {
+        int[] stripes = new int[LOCK_STRIPES];
+        for (int stripe = 0; stripe < LOCK_STRIPES; stripe++) {
+            locks[stripe].lock();
+            stripes[stripe] = stripe;
+        }
+        return new KeyLock(stripes);
+    }
+
+    /**
+     * Locks every stripe covering the given keys, in stripe order so concurrent callers can't deadlock.
+     * Operations on other keys proceed in parallel. Locks are reentrant, so the keyspace methods can
+     * be called while holding them.
+     */
+    public KeyLock lockKeys(Collection<String> keys) {
+        int[] stripes = keys.stream().mapToInt(RedisKeyspace::stripeOf).distinct().sorted().toArray();
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+        return new KeyLock(stripes);
+    }
+
+    /**
+     * Starts watching a key and returns its current version stamp. Every write to a watched key
+     * (including deletes and expiry) assigns it a new stamp.
+     */
+    public long watch(String key) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            watchCounts.merge(key, 1, Integer::sum);
+            expireIfNeeded(key);
+            return versions.getOrDefault(key, 0L);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void unwatch(String key) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            Integer remaining = watchCounts.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+            if (remaining == null) {
+                versions.remove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long version(String key) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            expireIfNeeded(key);
+            return versions.getOrDefault(key, 0L);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller must hold the key's stripe lock
+    private void store(String key, Object value, long ttlMillis) {
+        putEntry(key, value);
+        if (ttlMillis > 0) {
+            expirationTimes.put(key, System.currentTimeMillis() + ttlMillis);
+        } else {
+            expirationTimes.remove(key);
+        }
+        keyModified(key);
+    }
+
+    // Caller must hold the key's stripe lock. Makes room under the quota first, so a rejected write changes nothing.
+    private void putEntry(String key, Object value) {
+        Object previous = dataStore.get(key);
+        // Values mutated in place (bitmaps by SETBIT, dense HyperLogLogs) keep their size
+        if (previous != value) {
+            long delta = sizeOf(key, value) - (previous == null ? 0 : sizeOf(key, previous));
+            reserveMemory(key, delta);
+            dataStore.put(key, value);
+            usedMemory.addAndGet(delta);
+        }
+        if (evictionPolicy.isLru()) {
+            lastAccess.put(key, accessClock.incrementAndGet());
+        }
+    }
+
+    // Caller must hold the key's stripe lock
+    private Object removeEntry(String key) {
+        Object value = dataStore.remove(key);
+        if (value != null) {
+            usedMemory.addAndGet(-sizeOf(key, value));
+            if (!lastAccess.isEmpty()) {
+                lastAccess.remove(key);
+            }
+        }
+        return value;
+    }
+
+    private void recordAccess(String key, Object value) {
+        if (value == null) {
+            misses.increment();
+            return;
+        }
+        hits.increment();
+        if (evictionPolicy.isLru()) {
+            lastAccess.put(key, accessClock.incrementAndGet());
+        }
+    }
+
+    private void reserveMemory(String key, long delta) {
+        long limit = maxMemory;
+        if (limit <= 0 || delta <= 0 || usedMemory.get() + delta <= limit) {
+            return;
+        }
+        if (evictionPolicy == EvictionPolicy.NOEVICTION) {
+            throw new RedisOutOfMemoryException();
+        }
+        while (usedMemory.get() + delta > limit) {
+            if (!evictOne(key)) {
+                throw new RedisOutOfMemoryException();
+            }
+        }
+    }
+
+    private boolean evictOne(String writingKey) {
+        for (int attempt = 0; attempt < EVICTION_ATTEMPTS; attempt++) {
+            String victim = sampleVictim(evictionPolicy, writingKey);
+            if (victim == null) {
+                return false;
+            }
+            // We already hold the writing key's stripe: never block on another one, just sample again
+            ReentrantLock lock = lockFor(victim);
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                Object value = removeEntry(victim);
+                if (value == null) {
+                    continue;
+                }
+                expirationTimes.remove(victim);
+                keyModified(victim);
+                LazyFree.freeAsync(value);
+                evictedKeys.increment();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    // Samples a few keys from a rotating cursor into the eviction pool and takes the pool's best, like Redis' approximations
+    private String sampleVictim(EvictionPolicy policy, String writingKey) {
+        synchronized (evictionLock) {
+            Map<String, ?> source = policy.isVolatile() ? expirationTimes : dataStore;
+            if (evictionCursor == null || evictionCursorSource != source) {
+                evictionCursor = source.keySet().iterator();
+                evictionCursorSource = source;
+                evictionPool.clear();
+            }
+
+            int sampled = 0;
+            boolean wrapped = false;
+            while (sampled < EVICTION_SAMPLES) {
+                if (!evictionCursor.hasNext()) {
+                    if (wrapped) {
+                        break;
+                    }
+                    evictionCursor = source.keySet().iterator();
+                    wrapped = true;
+                    continue;
+                }
+                String candidate = evictionCursor.next();
+                sampled++;
+                if (!evictionPool.contains(candidate)) {
+                    evictionPool.add(candidate);
+                }
+            }
+
+            // Scores are re-read on every pick, so a pooled key that was touched since it was sampled loses its place
+            evictionPool.removeIf(candidate -> !source.containsKey(candidate));
+            Map<String, Long> scores = new HashMap<>();
+            for (String candidate : evictionPool) {
+                scores.put(candidate, evictionScore(policy, candidate));
+            }
+            evictionPool.sort(Comparator.comparingLong(scores::get));
+            while (evictionPool.size() > EVICTION_POOL_SIZE) {
+                evictionPool.remove(evictionPool.size() - 1);
+            }
+
+            String best = null;
+            for (String candidate : evictionPool) {
+                if (!candidate.equals(writingKey)) {
+                    best = candidate;
+                    break;
+                }
+            }
+            if (best != null) {
+                evictionPool.remove(best);
+            }
+            return best;
+        }
+    }
+
+    private long evictionScore(EvictionPolicy policy, String key) {
+        if (policy.isLru()) {
+            return lastAccess.getOrDefault(key, 0L);
+        }
+        if (policy == EvictionPolicy.VOLATILE_TTL) {
+            return expirationTimes.getOrDefault(key, Long.MAX_VALUE);
+        }
+        // Random policies evict in sample order; the rotating cursor spreads evictions over the keyspace
+        return 0;
+    }
+
+    private static long sizeOf(String key, Object value) {
+        long valueSize;
+        if (value instanceof String string) {
+            valueSize = 40 + string.length();
+        } else if (value instanceof byte[] bytes) {
+            valueSize = 16 + bytes.length;
+        } else if (value instanceof HyperLogLog hll) {
+            valueSize = 48 + hll.sizeInBytes();
+        } else {
+            valueSize = 24;
+        }
+        return ENTRY_OVERHEAD + key.length() + valueSize;
+    }
+
+    // Stores a value of any type, keeping an existing TTL (like Redis does for BITOP/PFMERGE destinations)
+    private void putValue(String key, Object value) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            expireIfNeeded(key);
+            putEntry(key, value);
+            keyModified(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller must hold the key's stripe lock
+    private HyperLogLog getHyperLogLog(String key) {
+        expireIfNeeded(key);
+        Object value = dataStore.get(key);
+        if (value == null || value instanceof HyperLogLog) {
+            return (HyperLogLog) value;
+        }
+        throw new RedisWrongTypeException();
+    }
+
+    // Sparse counters grow as registers are set, up to the jump to the dense encoding, so they are updated on a copy
+    // that putEntry only swaps in once the quota has room. Dense counters never change size and are updated in place.
+    private static HyperLogLog writableHyperLogLog(HyperLogLog hll) {
+        if (hll == null) {
+            return new HyperLogLog();
+        }
+        return hll.isSparse() ? hll.copy() : hll;
+    }
+
+    // Caller must hold the key's stripe lock; the array is the stored one and must not escape the lock
+    private byte[] readBytes(String key) {
+        expireIfNeeded(key);
+        Object value = dataStore.get(key);
+        recordAccess(key, value);
+        return value == null ? null : asBytes(value);
+    }
+
+    private static byte[] asBytes(Object value) {
+        if (value instanceof byte[] bytes) {
+            return bytes;
+        }
+        if (value instanceof String string) {
+            return string.getBytes(StandardCharsets.UTF_8);
+        }
+        throw new RedisWrongTypeException();
+    }
+
+    private static void checkBitOffset(long offset) {
+        if (offset < 0 || offset > Bitmaps.MAX_BIT_OFFSET) {
+            throw new IllegalArgumentException("bit offset is not an integer or out of range");
+        }
+    }
+
+    /**
+     * Incremental expiry sweep: examines at most maxChecks keys with a TTL, continuing where the previous
+     * call stopped, so each run is bounded however many keys expire. Expired keys are also removed on access.
+     * @return number of keys removed
+     */
+    int cleanupExpiredKeys(int maxChecks) {
+        long now = System.currentTimeMillis();
+        Map<String, Long> expirations = expirationTimes;
+        if (expiryCursor == null || !expiryCursor.hasNext() || expiryCursorSource != expirations) {
+            expiryCursor = expirations.entrySet().iterator();
+            expiryCursorSource = expirations;
+        }
+        Iterator<Map.Entry<String, Long>> it = expiryCursor;
+        int removedCount = 0;
+
+        for (int checked = 0; checked < maxChecks && it.hasNext(); checked++) {
+            Map.Entry<String, Long> entry = it.next();
+            if (now > entry.getValue()) {
+                String key = entry.getKey();
+                ReentrantLock lock = lockFor(key);
+                lock.lock();
+                try {
+                    // Re-check under the lock, the key may have been rewritten meanwhile
+                    Long expiresAt = expirationTimes.get(key);
+                    if (expiresAt != null && now > expiresAt) {
+                        Object value = removeEntry(key);
+                        expirationTimes.remove(key);
+                        keyModified(key);
+                        LazyFree.freeAsync(value);
+                        removedCount++;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        return removedCount;
+    }
+
+    private void expireIfNeeded(String key) {
+        Long expiresAt = expirationTimes.get(key);
+        if (expiresAt != null && System.currentTimeMillis() > expiresAt) {
+            Object value = removeEntry(key);
+            expirationTimes.remove(key);
+            keyModified(key);
+            LazyFree.freeAsync(value);
+        }
+    }
+
+    /**
+     * The listener receives the modified key, or null after a flush removed every key.
+     */
+    void setModificationListener(Consumer<String> modificationListener) {
+        this.modificationListener = modificationListener;
+    }
+
+    // Must be called while holding the key's stripe lock
+    private void keyModified(String key) {
+        if (!watchCounts.isEmpty() && watchCounts.containsKey(key)) {
+            versions.put(key, versionCounter.incrementAndGet());
+        }
+        Consumer<String> listener = modificationListener;
+        if (listener != null) {
+            listener.accept(key);
+        }
+    }
+
+    private ReentrantLock lockFor(String key) {
+        return locks[stripeOf(key)];
+    }
+
+    private static int stripeOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (LOCK_STRIPES - 1);
+    }
+
+    /**
+     * Holds the stripe locks taken by {@link #lockKeys(Collection)} until closed.
+     */
+    public class KeyLock implements AutoCloseable {
+        private final int[] stripes;
+
+        private KeyLock(int[] stripes) {
+            this.stripes = stripes;
+        }
+
+        @Override
+        public void close() {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+}
@@ -9,10 +9,17 @@ import savage.dbwrapper.database.DatabaseManager;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 public class RedisManager implements DatabaseManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(RedisManager.class);
 
+    // Static so mods can register functions during init, before the server has been started
+    private static final Map<String, RedisFunction> FUNCTIONS = new ConcurrentHashMap<>();
+    private static volatile SimpleRedisServer runningServer;
+
     private DBWrapperConfig config;
     private final Path configDirectory;
     private final Path redisDirectory;
@@ -20,6 +27,10 @@ public class RedisManager implements DatabaseManager {
 
     private SimpleRedisServer simpleRedisServer;
     private SimpleRedisClient simpleRedisClient;
+    private AsyncRedisClient asyncRedisClient;
+    private RedisConnectionPool connectionPool;
+    private LocalRedisClient localRedisClient;
+    private SharedMemoryPubSub sharedMemoryPubSub;
 
     public RedisManager() {
         this.configDirectory = FabricLoader.getInstance().getConfigDir().resolve("dbwrapper");
@@ -58,6 +69,9 @@ public class RedisManager implements DatabaseManager {
 
     @Override
     public void startDatabase() {
+        // Independent of which instance hosts the server: every instance on the host joins the shared rings
+        startSharedMemoryPubSub();
+
         // Check if Redis is actually running by trying to connect
         boolean actuallyRunning = false;
         try {
@@ -73,6 +87,7 @@ public class RedisManager implements DatabaseManager {
 
         if (actuallyRunning) {
             LOGGER.info("Redis is already running on port {}", config.getRedis().getPort());
+            startConnectionPool();
             return;
         }
 
@@ -84,12 +99,19 @@ public class RedisManager implements DatabaseManager {
                 config.getRedis().getPort(), 
                 config.getRedis().getPassword(), 
                 dataDirectory,
-                config.getRedis().getMaxConnections()
+                config.getRedis().getMaxConnections(),
+                getUnixSocketPath()
             );
+            FUNCTIONS.forEach(simpleRedisServer::registerFunction);
+            applyOutputBufferLimit(SimpleRedisServer.ClientClass.NORMAL, config.getRedis().getOutputBufferLimitNormal());
+            applyOutputBufferLimit(SimpleRedisServer.ClientClass.PUBSUB, config.getRedis().getOutputBufferLimitPubsub());
+            configureDatabases();
             simpleRedisServer.start();
+            runningServer = simpleRedisServer;
+            localRedisClient = new LocalRedisClient(simpleRedisServer);
 
-            // Create client connection
-            simpleRedisClient = new SimpleRedisClient("localhost", config.getRedis().getPort());
+            // Create client connection, preferring the unix socket when configured
+            simpleRedisClient = createClient();
             simpleRedisClient.connect();
 
             // Authenticate if password is set
@@ -97,6 +119,19 @@ public class RedisManager implements DatabaseManager {
                 simpleRedisClient.auth(config.getRedis().getPassword());
             }
 
+            // Shared multiplexed client for callers on any thread
+            asyncRedisClient = createAsyncClient();
+            asyncRedisClient.connect();
+            if (config.getRedis().hasPassword()) {
+                // Pipelined ahead of anything else sent on the connection
+                asyncRedisClient.auth(config.getRedis().getPassword()).exceptionally(e -> {
+                    LOGGER.error("Async Redis client failed to authenticate", e);
+                    return null;
+                });
+            }
+
+            startConnectionPool();
+
             // Test connection
             String pingResponse = simpleRedisClient.ping();
             LOGGER.info("Redis connection test successful: {}", pingResponse);
@@ -107,6 +142,18 @@ public class RedisManager implements DatabaseManager {
                 if (simpleRedisClient != null) {
                     simpleRedisClient.close();
                 }
+                if (asyncRedisClient != null) {
+                    asyncRedisClient.close();
+                    asyncRedisClient = null;
+                }
+                if (connectionPool != null) {
+                    connectionPool.close();
+                    connectionPool = null;
+                }
+                if (localRedisClient != null) {
+                    localRedisClient.close();
+                    localRedisClient = null;
+                }
                 if (simpleRedisServer != null) {
                     simpleRedisServer.stop();
                 }
@@ -117,16 +164,35 @@ public class RedisManager implements DatabaseManager {
     }
 
     @Override
-    public void stopDatabase() {
+    public synchronized void stopDatabase() {
         try {
-            // Close client
+            // Close clients
             if (simpleRedisClient != null) {
                 simpleRedisClient.close();
                 simpleRedisClient = null;
             }
+            if (asyncRedisClient != null) {
+                asyncRedisClient.close();
+                asyncRedisClient = null;
+            }
+            if (connectionPool != null) {
+                LOGGER.info("Closing {}", connectionPool);
+                connectionPool.close();
+                connectionPool = null;
+            }
+            if (localRedisClient != null) {
+                localRedisClient.close();
+                localRedisClient = null;
+            }
+
+            if (sharedMemoryPubSub != null) {
+                sharedMemoryPubSub.close();
+                sharedMemoryPubSub = null;
+            }
 
             // Stop server
             if (simpleRedisServer != null) {
+                runningServer = null;
                 simpleRedisServer.stop();
                 simpleRedisServer = null;
             }
@@ -144,6 +210,16 @@ public class RedisManager implements DatabaseManager {
             return true;
         }
 
+        // Probe over a pooled connection rather than opening a socket each time
+        RedisConnectionPool pool = connectionPool;
+        if (pool != null) {
+            try {
+                return "PONG".equals(pool.execute(SimpleRedisClient::ping));
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
         // If not, try to connect to see if Redis is actually running
         try {
             SimpleRedisClient testClient = new SimpleRedisClient("localhost", config.getRedis().getPort());
@@ -161,10 +237,181 @@ public class RedisManager implements DatabaseManager {
         return "redis";
     }
 
+    /**
+     * Registers a Java function that clients can run atomically with {@code FCALL}.
+     * Can be called before or after the embedded server has started.
+     */
+    public static void registerFunction(String name, RedisFunction function) {
+        FUNCTIONS.put(name, function);
+        SimpleRedisServer server = runningServer;
+        if (server != null) {
+            server.registerFunction(name, function);
+        }
+    }
+
+    public static void unregisterFunction(String name) {
+        FUNCTIONS.remove(name);
+        SimpleRedisServer server = runningServer;
+        if (server != null) {
+            server.unregisterFunction(name);
+        }
+    }
+
+    /**
+     * Creates an unconnected client for the configured server, using the unix socket when one is configured.
+     */
+    public SimpleRedisClient createClient() {
+        Path unixSocketPath = getUnixSocketPath();
+        if (unixSocketPath != null) {
+            return new SimpleRedisClient(unixSocketPath);
+        }
+        return new SimpleRedisClient("localhost", config.getRedis().getPort());
+    }
+
+    /**
+     * Creates an unconnected multiplexed client for the configured server, using the unix socket when one is configured.
+     */
+    public AsyncRedisClient createAsyncClient() {
+        Path unixSocketPath = getUnixSocketPath();
+        if (unixSocketPath != null) {
+            return new AsyncRedisClient(unixSocketPath);
+        }
+        return new AsyncRedisClient("localhost", config.getRedis().getPort());
+    }
+
+    /**
+     * Creates and connects a dedicated Pub/Sub connection. The caller owns it and must close it.
+     * @param callbackExecutor runs listeners (e.g. the Minecraft server for main-thread delivery); null for a dedicated thread
+     */
+    public RedisSubscriber createSubscriber(Executor callbackExecutor) throws IOException {
+        RedisSubscriber subscriber = new RedisSubscriber(getUnixSocketPath() == null ? "localhost" : null,
+            config.getRedis().getPort(), getUnixSocketPath(), config.getRedis().getPassword(), callbackExecutor);
+        subscriber.connect();
+        return subscriber;
+    }
+
+    private void startConnectionPool() {
+        if (connectionPool != null) {
+            return;
+        }
+        DBWrapperConfig.RedisPoolConfig pool = config.getRedis().getPool();
+        connectionPool = new RedisConnectionPool(this::createClient, config.getRedis().getPassword(),
+            pool.getMaxTotal(), pool.getMinIdle(), pool.getBorrowTimeoutMs(), pool.getIdleTimeoutMs());
+    }
+
+    private void startSharedMemoryPubSub() {
+        if (!config.getRedis().isSharedMemoryPubsub() || sharedMemoryPubSub != null) {
+            return;
+        }
+        Path directory;
+        if (!config.getRedis().getSharedMemoryDirectory().isBlank()) {
+            directory = Path.of(config.getRedis().getSharedMemoryDirectory());
+        } else if (Files.isDirectory(Path.of("/dev/shm"))) {
+            directory = Path.of("/dev/shm", "dbwrapper-pubsub");
+        } else {
+            directory = Path.of(System.getProperty("java.io.tmpdir"), "dbwrapper-pubsub");
+        }
+        try {
+            sharedMemoryPubSub = new SharedMemoryPubSub(directory, config.getRedis().getSharedMemoryRingBytes());
+        } catch (IOException e) {
+            LOGGER.error("Failed to start shared memory pub/sub in {}", directory, e);
+        }
+    }
+
+    private void configureDatabases() {
+        if (config.getRedis().getDatabases() == null) {
+            return;
+        }
+        for (DBWrapperConfig.RedisDatabaseConfig database : config.getRedis().getDatabases()) {
+            try {
+                simpleRedisServer.configureDatabase(database.getIndex(), database.getName(),
+                    database.getMaxMemoryBytes(), EvictionPolicy.fromName(database.getEvictionPolicy()));
+                LOGGER.info("Configured Redis database {} ({}): max memory {} bytes, policy {}", database.getIndex(),
+                    database.getName(), database.getMaxMemoryBytes(), database.getEvictionPolicy());
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Invalid Redis database configuration for index {}: {}", database.getIndex(), e.getMessage());
+            }
+        }
+    }
+
+    private void applyOutputBufferLimit(SimpleRedisServer.ClientClass clientClass, DBWrapperConfig.OutputBufferLimitConfig limit) {
+        if (limit != null) {
+            simpleRedisServer.setOutputBufferLimit(clientClass, limit.getHardLimitBytes(),
+                limit.getSoftLimitBytes(), limit.getSoftLimitSeconds());
+        }
+    }
+
+    public Path getUnixSocketPath() {
+        if (!config.getRedis().hasUnixSocket()) {
+            return null;
+        }
+        return Path.of(config.getRedis().getUnixSocket());
+    }
+
     public SimpleRedisClient getRedisClient() {
         if (simpleRedisClient == null) {
             throw new IllegalStateException("Redis is not running");
         }
         return simpleRedisClient;
     }
-}
\ No newline at end of file
+
+    /**
+     * Pool of blocking connections for callers that prefer request/response calls over {@link #getAsyncRedisClient()}.
+     * Also used to connect to a Redis instance hosted by another server.
+     */
+    public RedisConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            throw new IllegalStateException("Redis is not running");
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Thread-safe client shared by the whole server. Commands never block the caller, so it is safe to use
+     * from the main thread; prefer it over {@link #getRedisClient()}, which must not be shared between threads.
+     */
+    public AsyncRedisClient getAsyncRedisClient() {
+        if (asyncRedisClient == null) {
+            throw new IllegalStateException("Redis is not running");
+        }
+        return asyncRedisClient;
+    }
+
+    /**
+     * In-process client that bypasses TCP. Only available when the server is hosted in this JVM;
+     * servers connecting to a remote instance should keep using {@link #getRedisClient()}.
+     */
+    public LocalRedisClient getLocalRedisClient() {
+        if (localRedisClient == null) {
+            throw new IllegalStateException("Redis is not hosted in this server");
+        }
+        return localRedisClient;
+    }
+
+    /**
+     * Same-host pub/sub over memory-mapped rings, when enabled with {@code shared_memory_pubsub}.
+     * Messages published here only reach other instances' {@link SharedMemoryPubSub}, not Redis subscribers.
+     */
+    public SharedMemoryPubSub getSharedMemoryPubSub() {
+        if (sharedMemoryPubSub == null) {
+            throw new IllegalStateException("Shared memory pub/sub is not enabled");
+        }
+        return sharedMemoryPubSub;
+    }
+
+    /**
+     * Creates an in-process client bound to a logical database, by index or configured name.
+     * The caller owns the client and must close it.
+     */
+    public LocalRedisClient createLocalRedisClient(String database) {
+        SimpleRedisServer server = runningServer;
+        if (server == null) {
+            throw new IllegalStateException("Redis is not hosted in this server");
+        }
+        int index = server.getDatabaseIndex(database);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown Redis database: " + database);
+        }
+        return new LocalRedisClient(server, index);
+    }
+}
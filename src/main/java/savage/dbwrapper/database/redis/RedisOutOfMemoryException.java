@@ -0,0 +1,11 @@
+package savage.dbwrapper.database.redis;
+
+/**
+ * Thrown when a write would exceed a database's memory quota and its policy can't (or may not) evict.
+ * The message is the Redis OOM error reply.
+ */
+public class RedisOutOfMemoryException extends RuntimeException {
+    public RedisOutOfMemoryException() {
+        super("OOM command not allowed when used memory > 'maxmemory'.");
+    }
+}
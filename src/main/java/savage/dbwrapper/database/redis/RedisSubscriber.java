@@ -0,0 +1,303 @@
+package savage.dbwrapper.database.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+/**
+ * Dedicated Pub/Sub connection. A reader thread blocks on the socket and hands each message to the
+ * listeners of its channel (SUBSCRIBE) or pattern (PSUBSCRIBE) on the callback executor, so messages
+ * arrive as soon as they are published without anyone polling.
+ * <p>
+ * Subscriptions can be added and removed at any time. If the connection drops, the subscriber reconnects
+ * with backoff and subscribes to everything again; messages published while disconnected are lost.
+ * The default executor is a single thread, which keeps messages in publish order. Pass the Minecraft
+ * server (an {@link Executor}) to handle messages on the main thread instead.
+ */
+public class RedisSubscriber implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisSubscriber.class);
+
+    private static final long MIN_RECONNECT_DELAY_MILLIS = 100;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 5000;
+
+    private final String host;
+    private final int port;
+    private final Path unixSocketPath;
+    private final String password;
+    private final Executor callbackExecutor;
+    private final boolean ownsExecutor;
+
+    private final Map<String, List<BiConsumer<String, String>>> channelListeners = new ConcurrentHashMap<>();
+    private final Map<String, List<BiConsumer<String, String>>> patternListeners = new ConcurrentHashMap<>();
+
+    // Current connection; replaced on reconnect. Writes are guarded by this
+    private Socket socket;
+    private SocketChannel unixChannel;
+    private OutputStream out;
+    private Thread readerThread;
+    private volatile boolean connected = false;
+    private volatile boolean closed = false;
+
+    public RedisSubscriber(String host, int port, String password) {
+        this(host, port, null, password, null);
+    }
+
+    /**
+     * Creates a subscriber that connects over a Unix domain socket instead of TCP.
+     */
+    public RedisSubscriber(Path unixSocketPath, String password) {
+        this(null, -1, unixSocketPath, password, null);
+    }
+
+    /**
+     * @param callbackExecutor runs listeners; null for a dedicated thread that preserves message order
+     */
+    public RedisSubscriber(String host, int port, Path unixSocketPath, String password, Executor callbackExecutor) {
+        this.host = host;
+        this.port = port;
+        this.unixSocketPath = unixSocketPath;
+        this.password = password;
+        if (callbackExecutor != null) {
+            this.callbackExecutor = callbackExecutor;
+            this.ownsExecutor = false;
+        } else {
+            this.callbackExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "Redis-Subscriber-Callbacks");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.ownsExecutor = true;
+        }
+    }
+
+    /**
+     * Connects and starts the reader thread. Fails if the first connection can't be made;
+     * later disconnects are retried in the background.
+     */
+    public void connect() throws IOException {
+        InputStream in = openConnection();
+        readerThread = new Thread(() -> run(in), "Redis-Subscriber");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    public void subscribe(String channel, BiConsumer<String, String> listener) {
+        addListener(channelListeners, "SUBSCRIBE", channel, listener);
+    }
+
+    public void unsubscribe(String channel) {
+        removeListeners(channelListeners, "UNSUBSCRIBE", channel);
+    }
+
+    /**
+     * Subscribes to every channel matching a glob pattern ({@code *}, {@code ?}, {@code [...]}).
+     * The listener receives the actual channel name.
+     */
+    public void psubscribe(String pattern, BiConsumer<String, String> listener) {
+        addListener(patternListeners, "PSUBSCRIBE", pattern, listener);
+    }
+
+    public void punsubscribe(String pattern) {
+        removeListeners(patternListeners, "PUNSUBSCRIBE", pattern);
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void addListener(Map<String, List<BiConsumer<String, String>>> listeners, String command, String name,
+                             BiConsumer<String, String> listener) {
+        synchronized (this) {
+            boolean first = !listeners.containsKey(name);
+            listeners.computeIfAbsent(name, k -> new CopyOnWriteArrayList<>()).add(listener);
+            if (first) {
+                sendIfConnected(command, name);
+            }
+        }
+    }
+
+    private void removeListeners(Map<String, List<BiConsumer<String, String>>> listeners, String command, String name) {
+        synchronized (this) {
+            if (listeners.remove(name) != null) {
+                sendIfConnected(command, name);
+            }
+        }
+    }
+
+    // Caller holds this. While disconnected (or if the write fails) the resubscribe after reconnecting catches up
+    private void sendIfConnected(String... parts) {
+        if (!connected) {
+            return;
+        }
+        try {
+            send(parts);
+        } catch (IOException e) {
+            LOGGER.debug("Subscriber write failed, will resubscribe on reconnect", e);
+        }
+    }
+
+    private synchronized InputStream openConnection() throws IOException {
+        InputStream in;
+        if (unixSocketPath != null) {
+            unixChannel = SocketChannel.open(UnixDomainSocketAddress.of(unixSocketPath));
+            in = Channels.newInputStream(unixChannel);
+            out = Channels.newOutputStream(unixChannel);
+        } else {
+            socket = new Socket(host, port);
+            in = socket.getInputStream();
+            out = socket.getOutputStream();
+        }
+
+        try {
+            if (password != null && !password.isEmpty()) {
+                send("AUTH", password);
+            }
+            // Everything we were subscribed to before a reconnect
+            if (!channelListeners.isEmpty()) {
+                send(prepend("SUBSCRIBE", channelListeners.keySet()));
+            }
+            if (!patternListeners.isEmpty()) {
+                send(prepend("PSUBSCRIBE", patternListeners.keySet()));
+            }
+        } catch (IOException e) {
+            closeConnection();
+            throw e;
+        }
+        connected = true;
+        LOGGER.info("Redis subscriber connected to {}", unixSocketPath != null ? unixSocketPath : host + ":" + port);
+        return in;
+    }
+
+    private void run(InputStream in) {
+        long reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+        while (!closed) {
+            try {
+                readMessages(new RespReader(in));
+            } catch (IOException | RuntimeException e) {
+                if (closed) {
+                    return;
+                }
+                LOGGER.warn("Redis subscriber connection lost: {}", e.getMessage());
+            }
+            synchronized (this) {
+                connected = false;
+                closeConnection();
+            }
+
+            // Reconnect with exponential backoff until it works or we are closed
+            while (!closed) {
+                try {
+                    Thread.sleep(reconnectDelay);
+                    in = openConnection();
+                    reconnectDelay = MIN_RECONNECT_DELAY_MILLIS;
+                    break;
+                } catch (IOException e) {
+                    reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readMessages(RespReader reader) throws IOException {
+        while (!closed) {
+            Object reply = reader.readReply();
+            if (reply instanceof IOException error) {
+                // e.g. AUTH failed; the connection stays up, so just report it
+                LOGGER.error("Redis subscriber error: {}", error.getMessage());
+                continue;
+            }
+            if (!(reply instanceof List<?> parts) || parts.isEmpty()) {
+                continue; // +OK from AUTH, +PONG
+            }
+            String kind = String.valueOf(parts.get(0));
+            if (kind.equals("message") && parts.size() == 3) {
+                dispatch(channelListeners.get((String) parts.get(1)), (String) parts.get(1), (String) parts.get(2));
+            } else if (kind.equals("pmessage") && parts.size() == 4) {
+                dispatch(patternListeners.get((String) parts.get(1)), (String) parts.get(2), (String) parts.get(3));
+            }
+            // subscribe/unsubscribe confirmations need no handling
+        }
+    }
+
+    private void dispatch(List<BiConsumer<String, String>> listeners, String channel, String message) {
+        if (listeners == null) {
+            return;
+        }
+        for (BiConsumer<String, String> listener : listeners) {
+            callbackExecutor.execute(() -> {
+                try {
+                    listener.accept(channel, message);
+                } catch (Exception e) {
+                    LOGGER.error("Subscriber callback for channel {} failed", channel, e);
+                }
+            });
+        }
+    }
+
+    private static String[] prepend(String command, Iterable<String> names) {
+        List<String> parts = new ArrayList<>();
+        parts.add(command);
+        names.forEach(parts::add);
+        return parts.toArray(new String[0]);
+    }
+
+    // Caller holds this
+    private void send(String... parts) throws IOException {
+        StringBuilder command = new StringBuilder();
+        command.append('*').append(parts.length).append("\r\n");
+        for (String part : parts) {
+            command.append('$').append(part.getBytes(StandardCharsets.UTF_8).length).append("\r\n").append(part).append("\r\n");
+        }
+        out.write(command.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void closeConnection() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+            if (unixChannel != null) {
+                unixChannel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Error closing subscriber connection", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            connected = false;
+            closeConnection();
+        }
+        if (readerThread != null) {
+            readerThread.interrupt();
+        }
+        if (ownsExecutor) {
+            ((ExecutorService) callbackExecutor).shutdown();
+        }
+        LOGGER.info("Redis subscriber closed");
+    }
+}
@@ -0,0 +1,10 @@
+package savage.dbwrapper.database.redis;
+
+/**
+ * Thrown when a command is used against a key holding a different type of value.
+ */
+public class RedisWrongTypeException extends RuntimeException {
+    public RedisWrongTypeException() {
+        super("WRONGTYPE Operation against a key holding the wrong kind of value");
+    }
+}
@@ -0,0 +1,128 @@
+package savage.dbwrapper.database.redis;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Byte-level RESP parser for replies (and, on the server, commands). Bulk strings are read by their declared length, so values containing
+ * line breaks or multi-byte characters come through intact.
+ * <p>
+ * Replies map to String (simple and bulk strings), Long, List and null; error replies are returned as
+ * {@link IOException} instances rather than thrown, so arrays and pipelines can still be read completely.
+ */
+final class RespReader {
+    private final InputStream in;
+    // Reused for header lines, which are short
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+
+    RespReader(InputStream in) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 16384);
+    }
+
+    Object readReply() throws IOException {
+        String header = readLine();
+        if (header.isEmpty()) {
+            throw new IOException("Empty reply line");
+        }
+        switch (header.charAt(0)) {
+            case '+':
+                return header.substring(1);
+            case '-':
+                return new IOException(header.substring(1));
+            case ':':
+                return Long.parseLong(header.substring(1));
+            case '$': {
+                int length = Integer.parseInt(header.substring(1));
+                return length == -1 ? null : new String(readBulk(length), StandardCharsets.UTF_8);
+            }
+            case '*': {
+                int count = Integer.parseInt(header.substring(1));
+                if (count == -1) {
+                    return null;
+                }
+                List<Object> elements = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    elements.add(readReply());
+                }
+                return elements;
+            }
+            default:
+                throw new IOException("Unexpected reply: " + header);
+        }
+    }
+
+    /**
+     * Reads a bulk string reply as raw bytes, for binary values.
+     * @return the payload, or null for a null bulk string
+     * @throws IOException for error replies and anything other than a bulk string
+     */
+    byte[] readBulkBytes() throws IOException {
+        String header = readLine();
+        if (header.startsWith("$")) {
+            int length = Integer.parseInt(header.substring(1));
+            return length == -1 ? null : readBulk(length);
+        }
+        if (header.startsWith("-")) {
+            throw new IOException(header.substring(1));
+        }
+        throw new IOException("Expected bulk string, got: " + header);
+    }
+
+    /**
+     * Reads one command sent by a client: an array of bulk strings, kept as raw bytes so binary values
+     * survive. Lines that don't start an array are skipped.
+     * @return the arguments (a null bulk string becomes a null element), or null at end of stream
+     */
+    byte[][] readCommand() throws IOException {
+        String header;
+        do {
+            try {
+                header = readLine();
+            } catch (EOFException e) {
+                return null;
+            }
+        } while (!header.startsWith("*"));
+        int count = Integer.parseInt(header.substring(1));
+        byte[][] args = new byte[Math.max(count, 0)][];
+        for (int i = 0; i < args.length; i++) {
+            String bulkHeader = readLine();
+            if (!bulkHeader.startsWith("$")) {
+                throw new IOException("Expected bulk string, got: " + bulkHeader);
+            }
+            int length = Integer.parseInt(bulkHeader.substring(1));
+            args[i] = length == -1 ? null : readBulk(length);
+        }
+        return args;
+    }
+
+    private byte[] readBulk(int length) throws IOException {
+        byte[] payload = in.readNBytes(length);
+        if (payload.length < length || in.read() != '\r' || in.read() != '\n') {
+            throw new EOFException("Connection closed");
+        }
+        return payload;
+    }
+
+    private String readLine() throws IOException {
+        line.reset();
+        while (true) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed");
+            }
+            if (b == '\r') {
+                if (in.read() != '\n') {
+                    throw new IOException("Malformed reply line: " + line.toString(StandardCharsets.UTF_8));
+                }
+                return line.toString(StandardCharsets.UTF_8);
+            }
+            line.write(b);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package savage.dbwrapper.database.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * RESP output for one client connection. Text is written as UTF-8, and bulk replies
+ * carry their byte length so binary values such as bitmaps are sent intact.
+ * <p>
+ * Replies are assembled in memory and queued on {@link #flush()}; a virtual thread per connection
+ * writes the queue to the socket. Writers (including publishers delivering to this client) therefore
+ * never block on a slow reader. Instead the queued bytes are accounted, and the connection is closed
+ * when they break its {@link OutputBufferLimit}.
+ * <p>
+ * A reply opened with {@link #beginReply()} is queued as a whole on {@link #endReply()}; messages
+ * {@link #push pushed} by other threads meanwhile are held back and sent right after it.
+ */
+class RespWriter implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RespWriter.class);
+    private static final byte[] CRLF = {'\r', '\n'};
+    // Queued after the last chunk by close() so pending replies are still sent
+    private static final byte[] END = new byte[0];
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    private final String clientId;
+    private final OutputStream socketOut;
+    private final Supplier<OutputBufferLimit> limit;
+    private final Thread drainer;
+
+    private final ByteArrayOutputStream reply = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream deferred = new ByteArrayOutputStream();
+    // Where write() goes: the reply, or the deferred buffer while a push waits for an open reply
+    private ByteArrayOutputStream target = reply;
+    private int openReplies = 0;
+    private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicLong totalBytesWritten = new AtomicLong();
+    private long softLimitExceededSince = 0;
+    private volatile boolean closed = false;
+
+    RespWriter(OutputStream out, String clientId, Supplier<OutputBufferLimit> limit) {
+        this.clientId = clientId;
+        this.socketOut = out;
+        this.limit = limit;
+        this.drainer = Thread.ofVirtual().name("Redis-Output-" + clientId).start(this::drain);
+    }
+
+    synchronized void write(String text) throws IOException {
+        ensureOpen();
+        target.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    synchronized void writeBulk(String value) throws IOException {
+        writeBulk(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    synchronized void writeBulk(byte[] value) throws IOException {
+        ensureOpen();
+        target.writeBytes(("$" + value.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        target.writeBytes(value);
+        target.writeBytes(CRLF);
+    }
+
+    /**
+     * A message written by {@link #push}.
+     */
+    @FunctionalInterface
+    interface Push {
+        void writeTo(RespWriter writer) throws IOException;
+    }
+
+    /**
+     * Opens a reply; until the matching {@link #endReply()}, flushes are held back so the client never
+     * sees part of it. Replies nest, e.g. for the commands run by EXEC.
+     */
+    synchronized void beginReply() {
+        openReplies++;
+    }
+
+    /**
+     * Closes a reply and, once the outermost one is closed, queues it for sending.
+     */
+    synchronized void endReply() throws IOException {
+        if (--openReplies == 0 && !closed) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes and sends an out-of-band message such as a pub/sub delivery. If a reply is open it goes out
+     * right after that reply instead of inside it.
+     */
+    synchronized void push(Push message) throws IOException {
+        ensureOpen();
+        if (openReplies == 0) {
+            message.writeTo(this);
+            flush();
+            return;
+        }
+        target = deferred;
+        try {
+            message.writeTo(this);
+        } finally {
+            target = reply;
+        }
+    }
+
+    /**
+     * Queues everything written so far for sending and enforces the output buffer limit. Does nothing
+     * while a reply is open.
+     */
+    synchronized void flush() throws IOException {
+        ensureOpen();
+        if (openReplies > 0 || (reply.size() == 0 && deferred.size() == 0)) {
+            return;
+        }
+        reply.writeBytes(deferred.toByteArray());
+        deferred.reset();
+        byte[] chunk = reply.toByteArray();
+        reply.reset();
+        long pending = queuedBytes.addAndGet(chunk.length);
+        queue.add(chunk);
+        checkLimit(pending);
+    }
+
+    /**
+     * Bytes written by the server but not yet sent to the client.
+     */
+    long getPendingBytes() {
+        return queuedBytes.get() + reply.size() + deferred.size();
+    }
+
+    long getTotalBytesWritten() {
+        return totalBytesWritten.get();
+    }
+
+    /**
+     * Sends what is still queued (waiting up to a second for a slow client) and closes the stream.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                queue.add(END);
+            }
+        }
+        try {
+            drainer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkLimit(long pending) throws IOException {
+        OutputBufferLimit current = limit.get();
+        if (current.hardBytes > 0 && pending > current.hardBytes) {
+            abort("hard limit of " + current.hardBytes + " bytes");
+        }
+        if (current.softBytes > 0 && pending > current.softBytes) {
+            long now = System.currentTimeMillis();
+            if (softLimitExceededSince == 0) {
+                softLimitExceededSince = now;
+            } else if (now - softLimitExceededSince > current.softMillis) {
+                abort("soft limit of " + current.softBytes + " bytes for " + current.softMillis + " ms");
+            }
+        } else {
+            softLimitExceededSince = 0;
+        }
+    }
+
+    // Drops the queued output and closes the socket, which also ends the client's read loop
+    private void abort(String reason) throws IOException {
+        LOGGER.warn("Closing client {}: output buffer of {} bytes exceeded the {}", clientId, queuedBytes.get(), reason);
+        closed = true;
+        queue.clear();
+        queuedBytes.set(0);
+        queue.add(END);
+        try {
+            socketOut.close();
+        } catch (IOException ignored) {
+        }
+        throw new IOException("Output buffer limit exceeded");
+    }
+
+    private void drain() {
+        try (OutputStream out = new BufferedOutputStream(socketOut)) {
+            while (true) {
+                byte[] chunk = queue.take();
+                // Batch whatever else is already queued into the same socket write
+                while (chunk != null && chunk != END) {
+                    out.write(chunk);
+                    totalBytesWritten.addAndGet(chunk.length);
+                    queuedBytes.addAndGet(-chunk.length);
+                    chunk = queue.poll();
+                }
+                out.flush();
+                if (chunk == END) {
+                    return;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Client went away; the read loop notices and cleans up
+            closed = true;
+            queue.clear();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+    }
+}
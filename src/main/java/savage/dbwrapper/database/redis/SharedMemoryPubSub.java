@@ -0,0 +1,244 @@
+package savage.dbwrapper.database.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Pub/Sub between DBWrapper instances on the same host without going through a socket.
+ * Every instance owns one {@link MappedRingBuffer} in a shared directory (ideally tmpfs such as /dev/shm)
+ * and is its only writer; a poller thread reads every ring in the directory, its own included, so
+ * publishers see their own messages just like with Redis PUBLISH.
+ * <p>
+ * Delivery is at-most-once: a subscriber that falls a whole ring behind skips ahead and the gap is counted
+ * in {@link #getLaps()}. Listeners run on the poller thread and should hand heavy work off.
+ */
+public class SharedMemoryPubSub implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedMemoryPubSub.class);
+
+    private static final String RING_SUFFIX = ".ring";
+    private static final long RESCAN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int POLL_BATCH = 256;
+    // Idle backoff: spin briefly so bursts are picked up immediately, then yield, then sleep (bounding idle latency)
+    private static final int SPIN_POLLS = 1000;
+    private static final int YIELD_POLLS = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+
+    private final Path directory;
+    private final Path ringFile;
+    private final MappedRingBuffer ring;
+    private final Map<String, List<BiConsumer<String, String>>> subscriptions = new ConcurrentHashMap<>();
+    // Owned by the poller thread
+    private final Map<Path, RingReader> readers = new HashMap<>();
+    private final Thread poller;
+    private volatile boolean running = true;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private volatile long laps;
+
+    private static class RingReader {
+        final MappedRingBuffer ring;
+        final MappedRingBuffer.Reader reader;
+        final long writerPid;
+
+        RingReader(MappedRingBuffer ring) {
+            this.ring = ring;
+            this.reader = ring.new Reader();
+            this.writerPid = ring.getWriterPid();
+        }
+    }
+
+    /**
+     * @param directory shared by every instance on the host
+     * @param ringBytes size of this instance's ring; also bounds the largest message to a quarter of it
+     */
+    public SharedMemoryPubSub(Path directory, int ringBytes) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        this.ringFile = directory.resolve(ProcessHandle.current().pid() + RING_SUFFIX);
+        this.ring = MappedRingBuffer.create(ringFile, ringBytes);
+
+        this.poller = new Thread(this::pollLoop, "Redis-SharedMemory-PubSub");
+        poller.setDaemon(true);
+        poller.start();
+        LOGGER.info("Shared memory pub/sub ring created at {}", ringFile);
+    }
+
+    /**
+     * Publishes to every instance on the host. Messages from one publisher arrive in order.
+     */
+    public void publish(String channel, String message) {
+        byte[] channelName = channel.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        // One writer per ring
+        synchronized (ring) {
+            if (!running) {
+                throw new IllegalStateException("Shared memory pub/sub is closed");
+            }
+            ring.write(channelName, payload);
+        }
+        published.incrementAndGet();
+    }
+
+    public void subscribe(String channel, BiConsumer<String, String> listener) {
+        subscriptions.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void unsubscribe(String channel) {
+        subscriptions.remove(channel);
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * Number of times a ring was overwritten before this instance read it, each losing one or more messages.
+     */
+    public long getLaps() {
+        return laps;
+    }
+
+    public Path getRingFile() {
+        return ringFile;
+    }
+
+    private void pollLoop() {
+        long nextScan = 0;
+        int idlePolls = 0;
+        long parkNanos = 1000;
+        MappedRingBuffer.RecordHandler handler = this::dispatch;
+
+        while (running) {
+            if (System.nanoTime() - nextScan >= 0) {
+                scanRings();
+                nextScan = System.nanoTime() + RESCAN_INTERVAL_NANOS;
+            }
+
+            int read = 0;
+            long totalLaps = 0;
+            for (RingReader ringReader : readers.values()) {
+                read += ringReader.reader.poll(handler, POLL_BATCH);
+                totalLaps += ringReader.reader.getLaps();
+            }
+            if (totalLaps != laps) {
+                LOGGER.warn("Shared memory pub/sub subscriber fell behind a publisher; messages were lost");
+                laps = totalLaps;
+            }
+
+            if (read > 0) {
+                idlePolls = 0;
+                parkNanos = 1000;
+            } else if (++idlePolls <= SPIN_POLLS) {
+                Thread.onSpinWait();
+            } else if (idlePolls <= SPIN_POLLS + YIELD_POLLS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+            }
+        }
+    }
+
+    private void dispatch(byte[] channelName, byte[] payload) {
+        received.incrementAndGet();
+        String channel = new String(channelName, StandardCharsets.UTF_8);
+        List<BiConsumer<String, String>> listeners = subscriptions.get(channel);
+        if (listeners == null) {
+            return;
+        }
+        String message = new String(payload, StandardCharsets.UTF_8);
+        for (BiConsumer<String, String> listener : listeners) {
+            try {
+                listener.accept(channel, message);
+            } catch (Exception e) {
+                LOGGER.error("Shared memory subscriber for channel {} failed", channel, e);
+            }
+        }
+    }
+
+    // Picks up rings of instances that started since the last scan and drops those of instances that exited
+    private void scanRings() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + RING_SUFFIX)) {
+            for (Path file : files) {
+                if (readers.containsKey(file)) {
+                    continue;
+                }
+                MappedRingBuffer opened = MappedRingBuffer.open(file);
+                if (opened == null) {
+                    continue;
+                }
+                if (isAlive(opened.getWriterPid())) {
+                    readers.put(file, new RingReader(opened));
+                } else {
+                    // Left behind by an instance that crashed
+                    closeQuietly(opened);
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to scan shared memory pub/sub directory {}", directory, e);
+        }
+
+        Iterator<Map.Entry<Path, RingReader>> iterator = readers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, RingReader> entry = iterator.next();
+            RingReader ringReader = entry.getValue();
+            if (!isAlive(ringReader.writerPid) || !Files.exists(entry.getKey())) {
+                closeQuietly(ringReader.ring);
+                iterator.remove();
+            }
+        }
+    }
+
+    private static boolean isAlive(long pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    private static void closeQuietly(MappedRingBuffer ring) {
+        try {
+            ring.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close ring", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (ring) {
+            running = false;
+        }
+        LockSupport.unpark(poller);
+        try {
+            poller.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (RingReader ringReader : readers.values()) {
+            closeQuietly(ringReader.ring);
+        }
+        readers.clear();
+        ring.close();
+        Files.deleteIfExists(ringFile);
+    }
+}
@@ -5,127 +5,497 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.Socket;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Simple Redis client implementation using pure Java
  * Supports basic Redis protocol commands
+ * <p>
+ * Blocking and not thread-safe: share an {@link AsyncRedisClient} between threads instead.
  */
-public class SimpleRedisClient implements AutoCloseable {
+public class SimpleRedisClient implements RedisClient {
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleRedisClient.class);
 
     private final String host;
     private final int port;
+    private final Path unixSocketPath;
     private Socket socket;
-    private BufferedReader reader;
-    private BufferedWriter writer;
+    private SocketChannel unixChannel;
+    private RespReader reader;
+    private OutputStream writer;
+    private String password;
+
+    // Opt-in client-side cache, kept coherent by server invalidations (see enableClientCache)
+    private static final String INVALIDATE_CHANNEL = "__redis__:invalidate";
+    private volatile Map<String, String> clientCache;
+    private SimpleRedisClient invalidationClient;
+    // Bumped on every invalidation so a GET reply racing an invalidation is not cached
+    private long invalidationEpoch = 0;
+    private volatile boolean closing = false;
 
     public SimpleRedisClient(String host, int port) {
         this.host = host;
         this.port = port;
+        this.unixSocketPath = null;
+    }
+
+    /**
+     * Creates a client that connects over a Unix domain socket instead of TCP.
+     */
+    public SimpleRedisClient(Path unixSocketPath) {
+        this.host = null;
+        this.port = -1;
+        this.unixSocketPath = unixSocketPath;
     }
 
     public void connect() throws IOException {
+        if (unixSocketPath != null) {
+            unixChannel = SocketChannel.open(UnixDomainSocketAddress.of(unixSocketPath));
+            reader = new RespReader(Channels.newInputStream(unixChannel));
+            writer = new BufferedOutputStream(Channels.newOutputStream(unixChannel));
+            LOGGER.info("Connected to Redis server at unix socket {}", unixSocketPath);
+            return;
+        }
+
         socket = new Socket(host, port);
-        reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+        reader = new RespReader(socket.getInputStream());
+        writer = new BufferedOutputStream(socket.getOutputStream());
         LOGGER.info("Connected to Redis server at {}:{}", host, port);
     }
 
+    @Override
     public void auth(String password) throws IOException {
         sendCommand("AUTH", password);
         String response = readSimpleString();
         if (!"OK".equals(response)) {
             throw new IOException("Authentication failed: " + response);
         }
+        this.password = password;
         LOGGER.info("Authenticated with Redis server");
     }
 
+    @Override
     public String ping() throws IOException {
         sendCommand("PING");
         return readSimpleString();
     }
 
+    @Override
     public void set(String key, String value) throws IOException {
+        invalidateCached(key);
         sendCommand("SET", key, value);
         readSimpleString(); // Read "OK" response
     }
 
+    @Override
     public void setWithExpiration(String key, String value, long ttlMillis) throws IOException {
+        invalidateCached(key);
         sendCommand("SET", key, value, "PX", String.valueOf(ttlMillis));
         readSimpleString(); // Read "OK" response
     }
 
+    @Override
     public String get(String key) throws IOException {
+        Map<String, String> cache = clientCache;
+        if (cache == null) {
+            sendCommand("GET", key);
+            return readBulkString();
+        }
+
+        long epoch;
+        synchronized (cache) {
+            String cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            epoch = invalidationEpoch;
+        }
+
         sendCommand("GET", key);
-        return readBulkString();
+        String value = readBulkString();
+        if (value != null) {
+            synchronized (cache) {
+                if (invalidationEpoch == epoch) {
+                    cache.put(key, value);
+                }
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void setBytes(String key, byte[] value, long ttlMillis) throws IOException {
+        invalidateCached(key);
+        byte[][] parts = ttlMillis > 0
+            ? new byte[][] {ascii("SET"), utf8(key), value, ascii("PX"), ascii(String.valueOf(ttlMillis))}
+            : new byte[][] {ascii("SET"), utf8(key), value};
+        sendCommand(parts);
+        readSimpleString(); // Read "OK" response
+    }
+
+    /**
+     * Binary GET. Not served from the client-side cache, which only holds text values.
+     */
+    @Override
+    public byte[] getBytes(String key) throws IOException {
+        sendCommand("GET", key);
+        return reader.readBulkBytes();
     }
 
+    @Override
     public boolean exists(String key) throws IOException {
         sendCommand("EXISTS", key);
         return readInteger() == 1;
     }
 
+    @Override
     public boolean del(String key) throws IOException {
+        invalidateCached(key);
         sendCommand("DEL", key);
         return readInteger() == 1;
     }
 
+    /**
+     * Switches this connection to another logical database, by index or configured name.
+     */
+    public void select(String database) throws IOException {
+        sendCommand("SELECT", database);
+        readSimpleString();
+        // Cached values belong to the previous database
+        Map<String, String> cache = clientCache;
+        if (cache != null) {
+            synchronized (cache) {
+                cache.clear();
+                invalidationEpoch++;
+            }
+        }
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, long ttlMillis) throws IOException {
+        invalidateCached(key);
+        if (ttlMillis > 0) {
+            sendCommand("SET", key, value, "NX", "PX", String.valueOf(ttlMillis));
+        } else {
+            sendCommand("SET", key, value, "NX");
+        }
+        return readOkOrNull();
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expectedValue) throws IOException {
+        invalidateCached(key);
+        sendCommand("LOCK.RELEASE", key, expectedValue);
+        return readInteger() == 1;
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expectedValue, long ttlMillis) throws IOException {
+        sendCommand("LOCK.RENEW", key, expectedValue, String.valueOf(ttlMillis));
+        return readInteger() == 1;
+    }
+
+    @Override
+    public boolean acquireLock(String key, String token, long leaseMillis, long timeoutMillis) throws IOException {
+        invalidateCached(key);
+        sendCommand("LOCK.ACQUIRE", key, token, String.valueOf(leaseMillis), String.valueOf(timeoutMillis));
+        return readOkOrNull();
+    }
+
+    @Override
+    public ThrottleResult throttle(String key, long maxBurst, long countPerPeriod, long periodMillis, long quantity) throws IOException {
+        sendCommand("THROTTLE", key, String.valueOf(maxBurst), String.valueOf(countPerPeriod),
+            String.valueOf(periodMillis), String.valueOf(quantity));
+        Object reply = readReply();
+        if (reply instanceof IOException e) {
+            throw e;
+        }
+        List<?> fields = (List<?>) reply;
+        return new ThrottleResult((Long) fields.get(0) == 1, (Long) fields.get(1), (Long) fields.get(2),
+            (Long) fields.get(3), (Long) fields.get(4));
+    }
+
+    @Override
+    public long publish(String channel, String message) throws IOException {
+        sendCommand("PUBLISH", channel, message);
+        return readInteger();
+    }
+
+    @Override
+    public Object fcall(String function, List<String> keys, List<String> args) throws IOException {
+        List<String> parts = new ArrayList<>(3 + keys.size() + args.size());
+        parts.add("FCALL");
+        parts.add(function);
+        parts.add(String.valueOf(keys.size()));
+        parts.addAll(keys);
+        parts.addAll(args);
+        sendCommand(parts.toArray(new String[0]));
+
+        Object reply = readReply();
+        if (reply instanceof IOException e) {
+            throw e;
+        }
+        return reply;
+    }
+
+    /**
+     * Watches keys for the next {@link #multiExec(List)}; the transaction aborts if any of them changes first.
+     */
+    public void watch(String... keys) throws IOException {
+        String[] parts = new String[keys.length + 1];
+        parts[0] = "WATCH";
+        System.arraycopy(keys, 0, parts, 1, keys.length);
+        sendCommand(parts);
+        readSimpleString();
+    }
+
+    public void unwatch() throws IOException {
+        sendCommand("UNWATCH");
+        readSimpleString();
+    }
+
+    /**
+     * Runs the commands atomically with MULTI/EXEC.
+     * @return one reply per command (String, Long, List or null), or null if a watched key changed
+     * @throws IOException if a command was rejected. Rejected while queueing (unknown command, wrong argument
+     *                     count), none of the commands ran; failing during EXEC, the others have still been applied
+     */
+    public List<Object> multiExec(List<String[]> commands) throws IOException {
+        sendCommand("MULTI");
+        readSimpleString();
+        for (String[] command : commands) {
+            sendCommand(command);
+        }
+        sendCommand("EXEC");
+
+        // Read every QUEUED acknowledgement first so an error doesn't desync the connection
+        IOException queueError = null;
+        for (int i = 0; i < commands.size(); i++) {
+            try {
+                readSimpleString();
+            } catch (IOException e) {
+                queueError = e;
+            }
+        }
+
+        Object result = readReply();
+        if (queueError != null) {
+            throw queueError;
+        }
+        if (result == null) {
+            return null; // Aborted by WATCH
+        }
+        @SuppressWarnings("unchecked")
+        List<Object> replies = (List<Object>) result;
+        for (Object reply : replies) {
+            if (reply instanceof IOException e) {
+                throw e;
+            }
+        }
+        return replies;
+    }
+
+    /**
+     * Enables a bounded local cache for {@link #get(String)}. The server tracks keys read through this
+     * connection and pushes invalidations over a second connection when they change, so repeat reads of
+     * hot, read-mostly keys are served from memory. Keys that expire by TTL are only invalidated once the
+     * server notices the expiry, so prefer this for keys without short TTLs.
+     * Must be called after {@link #connect()} and {@link #auth(String)}.
+     */
+    public void enableClientCache(int maxEntries) throws IOException {
+        if (clientCache != null) {
+            return;
+        }
+
+        invalidationClient = unixSocketPath != null ? new SimpleRedisClient(unixSocketPath) : new SimpleRedisClient(host, port);
+        invalidationClient.connect();
+        try {
+            if (password != null) {
+                invalidationClient.auth(password);
+            }
+            invalidationClient.sendCommand("CLIENT", "ID");
+            int invalidationClientId = invalidationClient.readInteger();
+            invalidationClient.sendCommand("SUBSCRIBE", INVALIDATE_CHANNEL);
+            invalidationClient.readArray(); // Subscription confirmation
+
+            sendCommand("CLIENT", "TRACKING", "ON", "REDIRECT", String.valueOf(invalidationClientId));
+            readSimpleString();
+        } catch (IOException e) {
+            invalidationClient.close();
+            invalidationClient = null;
+            throw e;
+        }
+
+        Map<String, String> cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        clientCache = cache;
+
+        RespReader invalidationReader = invalidationClient.reader;
+        Thread thread = new Thread(() -> readInvalidations(invalidationReader, cache), "Redis-Invalidation");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("Client-side caching enabled (max {} entries)", maxEntries);
+    }
+
+    public boolean isClientCacheEnabled() {
+        return clientCache != null;
+    }
+
+    private void readInvalidations(RespReader invalidationReader, Map<String, String> cache) {
+        try {
+            while (true) {
+                // message __redis__:invalidate <array of keys, or null to flush everything>
+                if (!(invalidationReader.readReply() instanceof List<?> message) || message.size() != 3
+                        || !"message".equals(message.get(0))) {
+                    continue;
+                }
+                if (message.get(2) instanceof List<?> keys) {
+                    for (Object key : keys) {
+                        synchronized (cache) {
+                            cache.remove(key);
+                            invalidationEpoch++;
+                        }
+                    }
+                } else {
+                    synchronized (cache) {
+                        cache.clear();
+                        invalidationEpoch++;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Without invalidations the cache can't be trusted any more
+            synchronized (cache) {
+                cache.clear();
+                invalidationEpoch++;
+            }
+            clientCache = null;
+            if (!closing) {
+                LOGGER.warn("Lost Redis invalidation connection, client-side caching disabled", e);
+            }
+        }
+    }
+
+    private void invalidateCached(String key) {
+        Map<String, String> cache = clientCache;
+        if (cache != null) {
+            synchronized (cache) {
+                cache.remove(key);
+                invalidationEpoch++;
+            }
+        }
+    }
+
     private void sendCommand(String... parts) throws IOException {
+        byte[][] encoded = new byte[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            encoded[i] = parts[i] == null ? null : utf8(parts[i]);
+        }
+        sendCommand(encoded);
+    }
+
+    private void sendCommand(byte[]... parts) throws IOException {
         // Send array
-        writer.write("*" + parts.length + "\r\n");
+        writer.write(ascii("*" + parts.length + "\r\n"));
 
         // Send each part as bulk string
-        for (String part : parts) {
+        for (byte[] part : parts) {
             if (part == null) {
-                writer.write("$" + (-1) + "\r\n");
+                writer.write(ascii("$-1\r\n"));
             } else {
-                byte[] bytes = part.getBytes();
-                writer.write("$" + bytes.length + "\r\n");
-                writer.write(part + "\r\n");
+                writer.write(ascii("$" + part.length + "\r\n"));
+                writer.write(part);
+                writer.write('\r');
+                writer.write('\n');
             }
         }
 
         writer.flush();
     }
 
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
     private String readSimpleString() throws IOException {
-        String line = reader.readLine();
-        if (line == null) throw new IOException("Connection closed");
-        if (!line.startsWith("+")) throw new IOException("Expected simple string, got: " + line);
-        return line.substring(1);
+        Object reply = readReply();
+        if (reply instanceof IOException e) throw e;
+        if (!(reply instanceof String string)) throw new IOException("Expected simple string, got: " + reply);
+        return string;
+    }
+
+    // Conditional writes reply +OK, or a null bulk string when skipped
+    private boolean readOkOrNull() throws IOException {
+        Object reply = readReply();
+        if (reply instanceof IOException e) {
+            throw e;
+        }
+        return reply != null;
     }
 
     private String readBulkString() throws IOException {
-        String line = reader.readLine();
-        if (line == null) throw new IOException("Connection closed");
-        if (!line.startsWith("$")) throw new IOException("Expected bulk string, got: " + line);
+        Object reply = readReply();
+        if (reply instanceof IOException e) throw e;
+        if (reply != null && !(reply instanceof String)) throw new IOException("Expected bulk string, got: " + reply);
+        return (String) reply;
+    }
 
-        int length = Integer.parseInt(line.substring(1));
-        if (length == -1) {
-            return null; // Null bulk string
-        }
+    // Reads any reply type; error replies are returned (not thrown) so arrays can be read completely
+    private Object readReply() throws IOException {
+        return reader.readReply();
+    }
 
-        return reader.readLine();
+    private void readArray() throws IOException {
+        Object reply = readReply();
+        if (reply instanceof IOException e) throw e;
+        if (!(reply instanceof List)) throw new IOException("Expected array, got: " + reply);
     }
 
     private int readInteger() throws IOException {
-        String line = reader.readLine();
-        if (line == null) throw new IOException("Connection closed");
-        if (!line.startsWith(":")) throw new IOException("Expected integer, got: " + line);
-        return Integer.parseInt(line.substring(1));
+        Object reply = readReply();
+        if (reply instanceof IOException e) throw e;
+        if (!(reply instanceof Long number)) throw new IOException("Expected integer, got: " + reply);
+        return number.intValue();
     }
 
     @Override
     public void close() throws IOException {
+        closing = true;
+        if (invalidationClient != null) {
+            invalidationClient.close();
+            invalidationClient = null;
+        }
         if (socket != null) {
             socket.close();
             LOGGER.info("Disconnected from Redis server");
         }
+        if (unixChannel != null) {
+            unixChannel.close();
+            LOGGER.info("Disconnected from Redis server");
+        }
     }
 
+    @Override
     public boolean isConnected() {
+        if (unixChannel != null) {
+            return unixChannel.isConnected();
+        }
         return socket != null && socket.isConnected() && !socket.isClosed();
     }
 }
\ No newline at end of file
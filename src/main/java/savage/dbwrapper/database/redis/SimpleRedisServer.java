@@ -6,9 +6,19 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * Simple Redis-like server implementation using pure Java
@@ -22,42 +32,131 @@ public class SimpleRedisServer {
     private final String password;
     private final Path dataDirectory;
     private final int maxConnections;
+    private final Path unixSocketPath;
     
     private ServerSocket serverSocket;
+    private ServerSocketChannel unixServerChannel;
     private ExecutorService executorService;
     private ScheduledExecutorService scheduledTaskService;
     private volatile boolean running = false;
 
-    // Data stores (In-Memory Only)
-    private final Map<String, String> dataStore = new ConcurrentHashMap<>();
-    private final Map<String, Long> expirationTimes = new ConcurrentHashMap<>();
+    // Data store (In-Memory Only): one keyspace per logical database, chosen with SELECT
+    public static final int DATABASE_COUNT = 16;
+    private final RedisKeyspace[] databases = new RedisKeyspace[DATABASE_COUNT];
+    private final LockManager[] lockManagers = new LockManager[DATABASE_COUNT];
+    // Optional names that SELECT accepts in place of an index
+    private final Map<String, Integer> databaseNames = new ConcurrentHashMap<>();
 
     // Pub/Sub support
     // Use CopyOnWriteArrayList for thread-safe iteration during PUBLISH
     private final Map<String, List<ClientConnection>> channelSubscriptions = new ConcurrentHashMap<>();
+    // PSUBSCRIBE glob pattern -> subscribers; matched against every published channel
+    private final Map<String, List<ClientConnection>> patternSubscriptions = new ConcurrentHashMap<>();
+    // In-process listeners registered by LocalRedisClient, invoked on the publishing thread
+    private final Map<String, List<BiConsumer<String, String>>> localListeners = new ConcurrentHashMap<>();
     private final Map<String, ClientConnection> clientConnections = new ConcurrentHashMap<>();
 
+    // Client tracking: key -> ids of connections that receive its invalidation (see CLIENT TRACKING)
+    private static final String INVALIDATE_CHANNEL = "__redis__:invalidate";
+    private final Map<String, Set<String>> trackingTable = new ConcurrentHashMap<>();
+
+    // Server-side functions invoked through FCALL
+    private final Map<String, RedisFunction> functions = new ConcurrentHashMap<>();
+
+    // Incremental expiry: keys with a TTL examined per slice, and the time one cleanup run may take
+    private static final int EXPIRY_CHECKS_PER_SLICE = 1000;
+    private static final long EXPIRY_TIME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(25);
+
+    // Commands that are executed immediately rather than queued inside MULTI
+    private static final Set<String> TRANSACTION_COMMANDS = Set.of("MULTI", "EXEC", "DISCARD", "WATCH", "UNWATCH", "QUIT");
+    // Argument count of each queueable command including its name, Redis style: negative means at least that many
+    private static final Map<String, Integer> COMMAND_ARITY = Map.ofEntries(
+        Map.entry("AUTH", -2), Map.entry("PING", -1), Map.entry("SAVE", -1), Map.entry("BGSAVE", -1),
+        Map.entry("SET", -3), Map.entry("GET", -2), Map.entry("DEL", -2), Map.entry("UNLINK", -2),
+        Map.entry("EXISTS", -2), Map.entry("KEYS", -2), Map.entry("SUBSCRIBE", -2), Map.entry("PSUBSCRIBE", -2),
+        Map.entry("PUBLISH", -3), Map.entry("UNSUBSCRIBE", -1), Map.entry("PUNSUBSCRIBE", -1), Map.entry("CLIENT", -2),
+        Map.entry("SETBIT", -4), Map.entry("GETBIT", -3), Map.entry("BITCOUNT", -2), Map.entry("BITOP", -4),
+        Map.entry("PFADD", -2), Map.entry("PFCOUNT", -2), Map.entry("PFMERGE", -2), Map.entry("FCALL", -3),
+        Map.entry("FCALL_RO", -3), Map.entry("LOCK.ACQUIRE", 5), Map.entry("LOCK.RELEASE", 3), Map.entry("LOCK.RENEW", 4),
+        Map.entry("THROTTLE", -5), Map.entry("INFO", -1));
+
     // Authentication support
     private final Set<String> authenticatedClients = ConcurrentHashMap.newKeySet();
-    private int clientCounter = 0;
+    // Shared by the TCP and unix socket acceptor threads
+    private final AtomicInteger clientCounter = new AtomicInteger();
 
     // Inner class to track client connections
     private static class ClientConnection {
         final String clientId;
-        final BufferedWriter writer;
-        final Set<String> subscriptions = new HashSet<>();
+        final String address;
+        final RespWriter writer;
+        // Read by publishers and CLIENT LIST on other threads
+        final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+        final Set<String> patternSubscriptions = ConcurrentHashMap.newKeySet();
+        // Statistics for CLIENT LIST
+        final long connectedAt = System.currentTimeMillis();
+        volatile long lastInteraction = connectedAt;
+        volatile long commandCount = 0;
+        volatile String lastCommand = "NULL";
+        // Client tracking state, set by CLIENT TRACKING
+        volatile boolean tracking = false;
+        volatile String trackingRedirect;
+        // Database selected with SELECT
+        int database = 0;
+        // Transaction state: queued commands while inside MULTI (null otherwise) and WATCHed version stamps
+        List<byte[][]> queuedCommands;
+        // Set when a command couldn't be queued; EXEC then discards the whole transaction
+        boolean transactionFailed = false;
+        final Map<String, Long> watchedKeys = new HashMap<>();
+        int watchedDatabase = 0;
+        // Set while EXEC runs the queue with key stripes held; blocking commands must not wait then
+        boolean executingTransaction = false;
 
-        ClientConnection(String clientId, BufferedWriter writer) {
+        ClientConnection(String clientId, String address, OutputStream output,
+                         Function<ClientConnection, OutputBufferLimit> outputBufferLimit) {
             this.clientId = clientId;
-            this.writer = writer;
+            this.address = address;
+            this.writer = new RespWriter(output, clientId, () -> outputBufferLimit.apply(this));
         }
     }
 
+    /**
+     * Client classes with separate output buffer limits, see {@link #setOutputBufferLimit}.
+     */
+    public enum ClientClass {
+        NORMAL,
+        PUBSUB
+    }
+
+    // Defaults match Redis: normal clients are unlimited, subscribers 32 MB hard / 8 MB for 60 s soft
+    private volatile OutputBufferLimit normalOutputLimit = OutputBufferLimit.UNLIMITED;
+    private volatile OutputBufferLimit pubsubOutputLimit = new OutputBufferLimit(32L << 20, 8L << 20, 60_000);
+
     public SimpleRedisServer(int port, String password, Path dataDirectory, int maxConnections) {
+        this(port, password, dataDirectory, maxConnections, null);
+    }
+
+    /**
+     * @param unixSocketPath optional Unix domain socket to listen on in addition to TCP, or null
+     */
+    public SimpleRedisServer(int port, String password, Path dataDirectory, int maxConnections, Path unixSocketPath) {
         this.port = port;
         this.password = password;
         this.dataDirectory = dataDirectory;
         this.maxConnections = maxConnections;
+        this.unixSocketPath = unixSocketPath;
+        for (int i = 0; i < DATABASE_COUNT; i++) {
+            int database = i;
+            databases[i] = new RedisKeyspace();
+            // Like Redis, tracking invalidations name the key only, whatever database it lives in
+            databases[i].setModificationListener(key -> {
+                invalidateTrackedKey(key);
+                LockManager locks = lockManagers[database];
+                if (locks != null) {
+                    locks.onKeyModified(key);
+                }
+            });
+        }
     }
 
     public void start() throws IOException {
@@ -67,33 +166,47 @@ public class SimpleRedisServer {
         
         // Background tasks (Cleanup only)
         scheduledTaskService = Executors.newSingleThreadScheduledExecutor();
+        for (int i = 0; i < DATABASE_COUNT; i++) {
+            lockManagers[i] = new LockManager(databases[i], scheduledTaskService);
+        }
         
         running = true;
 
-        // Schedule expiration cleanup (every 10 seconds)
+        // Incremental expiration cleanup, a bounded slice every 100 ms
         scheduledTaskService.scheduleAtFixedRate(this::cleanupExpiredKeys, 
-            10, 10, TimeUnit.SECONDS);
+            100, 100, TimeUnit.MILLISECONDS);
 
         LOGGER.info("Simple Redis server started on port {} (Max connections: {})", port, maxConnections);
 
         // Start client handler thread
         new Thread(this::acceptConnections, "Redis-Acceptor").start();
+
+        if (unixSocketPath != null) {
+            startUnixListener();
+        }
+    }
+
+    private void startUnixListener() throws IOException {
+        // Remove a stale socket file left behind by an unclean shutdown
+        Files.deleteIfExists(unixSocketPath);
+        unixServerChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        unixServerChannel.bind(UnixDomainSocketAddress.of(unixSocketPath));
+
+        LOGGER.info("Simple Redis server listening on unix socket {}", unixSocketPath);
+        new Thread(this::acceptUnixConnections, "Redis-Unix-Acceptor").start();
     }
 
     private void cleanupExpiredKeys() {
-        long now = System.currentTimeMillis();
-        Iterator<Map.Entry<String, Long>> it = expirationTimes.entrySet().iterator();
+        // Like Redis' active expiry: keep sweeping while a slice is mostly expired keys, within a time budget
+        long deadline = System.nanoTime() + EXPIRY_TIME_BUDGET_NANOS;
         int removedCount = 0;
-        
-        while (it.hasNext()) {
-            Map.Entry<String, Long> entry = it.next();
-            if (now > entry.getValue()) {
-                dataStore.remove(entry.getKey());
-                it.remove();
-                removedCount++;
-            }
+        for (RedisKeyspace keyspace : databases) {
+            int removed;
+            do {
+                removed = keyspace.cleanupExpiredKeys(EXPIRY_CHECKS_PER_SLICE);
+                removedCount += removed;
+            } while (removed > EXPIRY_CHECKS_PER_SLICE / 4 && System.nanoTime() < deadline);
         }
-        
         if (removedCount > 0) {
             LOGGER.debug("Cleaned up {} expired keys", removedCount);
         }
@@ -105,7 +218,7 @@ public class SimpleRedisServer {
                 try {
                     Socket clientSocket = serverSocket.accept();
                     clientSocket.setKeepAlive(true); // Detect broken connections
-                    String clientId = "client-" + (++clientCounter);
+                    String clientId = "client-" + clientCounter.incrementAndGet();
                     
                     LOGGER.info("Accepted connection from {} (ID: {})", clientSocket.getRemoteSocketAddress(), clientId);
                     
@@ -128,46 +241,61 @@ public class SimpleRedisServer {
         }
     }
 
+    private void acceptUnixConnections() {
+        while (running) {
+            try {
+                SocketChannel channel = unixServerChannel.accept();
+                String clientId = "client-" + clientCounter.incrementAndGet();
+
+                LOGGER.info("Accepted unix socket connection (ID: {})", clientId);
+
+                try {
+                    executorService.submit(() -> handleClient(Channels.newInputStream(channel),
+                        Channels.newOutputStream(channel), channel, clientId, unixSocketPath + ":0"));
+                } catch (RejectedExecutionException e) {
+                    LOGGER.warn("Max connections reached, rejecting client {}", clientId);
+                    channel.close();
+                }
+            } catch (IOException e) {
+                if (running) {
+                    LOGGER.error("Error accepting unix socket connection", e);
+                }
+            }
+        }
+    }
+
     private void handleClient(Socket socket, String clientId) {
-        ClientConnection clientConn;
         try {
-            clientConn = new ClientConnection(clientId,
-                new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
-            clientConnections.put(clientId, clientConn);
-            LOGGER.info("Client connected: {}. Active connections: {}", clientId, clientConnections.size());
+            String address = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+            handleClient(socket.getInputStream(), socket.getOutputStream(), socket, clientId, address);
         } catch (IOException e) {
             LOGGER.error("Failed to create client connection for {}", clientId, e);
-            return;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
         }
+    }
+
+    // Shared by TCP and unix socket connections
+    private void handleClient(InputStream input, OutputStream output, Closeable socket, String clientId, String address) {
+        ClientConnection clientConn = new ClientConnection(clientId, address, output, this::outputBufferLimit);
+        clientConnections.put(clientId, clientConn);
+        LOGGER.info("Client connected: {}. Active connections: {}", clientId, clientConnections.size());
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-              BufferedWriter writer = clientConn.writer) {
+        try (RespWriter writer = clientConn.writer) {
+            RespReader reader = new RespReader(input);
 
             while (running) {
-                String line = reader.readLine();
-                if (line == null) break;
-
-                // Parse Redis protocol
-                if (line.startsWith("*")) { // Array
-                    int commandCount = Integer.parseInt(line.substring(1));
-                    String[] commands = new String[commandCount];
-
-                    for (int i = 0; i < commandCount; i++) {
-                        // Read bulk string
-                        String bulkLine = reader.readLine();
-                        if (bulkLine == null || !bulkLine.startsWith("$")) break;
-
-                        int length = Integer.parseInt(bulkLine.substring(1));
-                        if (length == -1) { // Null bulk string
-                            commands[i] = null;
-                        } else {
-                            commands[i] = reader.readLine();
-                        }
-                    }
+                // Arguments stay raw bytes until a handler decides how to read them, so binary values survive
+                byte[][] commands = reader.readCommand();
+                if (commands == null) break;
 
-                    if (commands.length > 0 && commands[0] != null) {
-                        handleCommand(commands, writer, clientId);
-                    }
+                if (commands.length > 0 && commands[0] != null) {
+                    clientConn.lastInteraction = System.currentTimeMillis();
+                    clientConn.commandCount++;
+                    clientConn.lastCommand = new String(commands[0], StandardCharsets.UTF_8).toLowerCase();
+                    handleCommand(commands, writer, clientId);
                 }
             }
         } catch (Exception e) {
@@ -177,10 +305,20 @@ public class SimpleRedisServer {
             clientConnections.remove(clientId);
             authenticatedClients.remove(clientId);
             
-            // Remove from all channel subscriptions
+            // Remove from all channel and pattern subscriptions
             for (List<ClientConnection> subscribers : channelSubscriptions.values()) {
                 subscribers.remove(clientConn);
             }
+            for (List<ClientConnection> subscribers : patternSubscriptions.values()) {
+                subscribers.remove(clientConn);
+            }
+
+            unwatchAll(clientConn);
+            if (clientConn.tracking) {
+                disableTracking(clientConn);
+            }
+            // Drop invalidations still routed to this connection as a redirect target
+            removeTrackingTarget(clientId);
 
             try {
                 socket.close();
@@ -191,7 +329,18 @@ public class SimpleRedisServer {
         }
     }
 
-    private void handleCommand(String[] commands, BufferedWriter writer, String clientId) throws IOException {
+    private void handleCommand(byte[][] rawCommands, RespWriter writer, String clientId) throws IOException {
+        // Sent as a whole, so pub/sub messages and invalidations can't land inside a multi-part reply (EXEC, THROTTLE, KEYS)
+        writer.beginReply();
+        try {
+            executeCommand(rawCommands, writer, clientId);
+        } finally {
+            writer.endReply();
+        }
+    }
+
+    private void executeCommand(byte[][] rawCommands, RespWriter writer, String clientId) throws IOException {
+        String[] commands = decodeArguments(rawCommands);
         String command = commands[0].toUpperCase();
 
         // Check authentication for commands that require it
@@ -202,12 +351,32 @@ public class SimpleRedisServer {
             return;
         }
 
+        // Inside MULTI everything except the transaction commands is queued for EXEC
+        ClientConnection conn = clientConnections.get(clientId);
+        if (conn != null && conn.queuedCommands != null && !TRANSACTION_COMMANDS.contains(command)) {
+            String error = queueError(command, commands.length);
+            if (error != null) {
+                // Like Redis, a command that can't be queued makes EXEC run none of them
+                conn.transactionFailed = true;
+                writer.write("-ERR " + error + "\r\n");
+                writer.flush();
+                return;
+            }
+            conn.queuedCommands.add(rawCommands);
+            writer.write("+QUEUED\r\n");
+            writer.flush();
+            return;
+        }
+
+        int database = conn != null ? conn.database : 0;
+        RedisKeyspace keyspace = databases[database];
+
         try {
             switch (command) {
                 case "AUTH":
                     if (commands.length >= 2) {
                         String providedPassword = commands[1];
-                        if (password == null || password.trim().isEmpty() || password.equals(providedPassword)) {
+                        if (checkPassword(providedPassword)) {
                             authenticatedClients.add(clientId);
                             writer.write("+OK\r\n");
                             writer.flush();
@@ -237,21 +406,7 @@ public class SimpleRedisServer {
 
                 case "SET":
                     if (commands.length >= 3) {
-                        String key = commands[1];
-                        String value = commands[2];
-                        dataStore.put(key, value);
-
-                        // Handle expiration if provided
-                        if (commands.length >= 5 && "PX".equalsIgnoreCase(commands[3])) {
-                            long ttl = Long.parseLong(commands[4]);
-                            expirationTimes.put(key, System.currentTimeMillis() + ttl);
-                        } else {
-                             // Remove any existing expiration if simple SET is used
-                             expirationTimes.remove(key);
-                        }
-
-                        writer.write("+OK\r\n");
-                        writer.flush();
+                        handleSet(keyspace, commands, rawCommands[2], writer);
                     } else {
                         writer.write("-ERR wrong number of arguments for 'set' command\r\n");
                         writer.flush();
@@ -261,20 +416,16 @@ public class SimpleRedisServer {
                 case "GET":
                     if (commands.length >= 2) {
                         String key = commands[1];
-                        
-                        // Check expiration first
-                        if (expirationTimes.containsKey(key)) {
-                            if (System.currentTimeMillis() > expirationTimes.get(key)) {
-                                dataStore.remove(key);
-                                expirationTimes.remove(key);
-                            }
+
+                        // Register before reading so a concurrent write can't slip in unnoticed
+                        ClientConnection reader = clientConnections.get(clientId);
+                        if (reader != null && reader.tracking) {
+                            trackKey(key, reader);
                         }
-                        
-                        String value = dataStore.get(key);
+                        byte[] value = keyspace.getBytes(key);
 
                         if (value != null) {
-                            writer.write("$" + value.length() + "\r\n");
-                            writer.write(value + "\r\n");
+                            writer.writeBulk(value);
                             writer.flush();
                         } else {
                             writer.write("$-1\r\n"); // Null bulk string
@@ -289,10 +440,8 @@ public class SimpleRedisServer {
                 case "DEL":
                     if (commands.length >= 2) {
                         String key = commands[1];
-                        String value = dataStore.remove(key);
-                        expirationTimes.remove(key);
 
-                        if (value != null) {
+                        if (keyspace.delete(key)) {
                             writer.write(":1\r\n"); // Integer reply
                         } else {
                             writer.write(":0\r\n");
@@ -304,19 +453,44 @@ public class SimpleRedisServer {
                     }
                     break;
 
-                case "EXISTS":
+                case "UNLINK":
                     if (commands.length >= 2) {
-                        String key = commands[1];
-                        boolean exists = dataStore.containsKey(key);
-
-                        // Check expiration
-                        if (exists && expirationTimes.containsKey(key)) {
-                            if (System.currentTimeMillis() > expirationTimes.get(key)) {
-                                dataStore.remove(key);
-                                expirationTimes.remove(key);
-                                exists = false;
+                        int unlinked = 0;
+                        for (int i = 1; i < commands.length; i++) {
+                            if (keyspace.unlink(commands[i])) {
+                                unlinked++;
                             }
                         }
+                        writer.write(":" + unlinked + "\r\n");
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'unlink' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "FLUSHDB":
+                case "FLUSHALL":
+                    if (commands.length == 1 || (commands.length == 2
+                            && (commands[1].equalsIgnoreCase("ASYNC") || commands[1].equalsIgnoreCase("SYNC")))) {
+                        boolean async = commands.length == 2 && commands[1].equalsIgnoreCase("ASYNC");
+                        if (command.equals("FLUSHALL")) {
+                            for (RedisKeyspace db : databases) {
+                                db.flush(async);
+                            }
+                        } else {
+                            keyspace.flush(async);
+                        }
+                        writer.write("+OK\r\n");
+                    } else {
+                        writer.write("-ERR syntax error\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "EXISTS":
+                    if (commands.length >= 2) {
+                        String key = commands[1];
+                        boolean exists = keyspace.exists(key);
 
                         writer.write(":" + (exists ? "1" : "0") + "\r\n");
                         writer.flush();
@@ -332,15 +506,11 @@ public class SimpleRedisServer {
                         String pattern = commands[1];
                         // Only support * for now
                         if ("*".equals(pattern)) {
-                            Set<String> keys = new HashSet<>(dataStore.keySet());
-                            // Filter expired
-                            long now = System.currentTimeMillis();
-                            keys.removeIf(k -> expirationTimes.containsKey(k) && now > expirationTimes.get(k));
-                            
+                            Set<String> keys = keyspace.keys();
+
                             writer.write("*" + keys.size() + "\r\n");
                             for (String k : keys) {
-                                writer.write("$" + k.length() + "\r\n");
-                                writer.write(k + "\r\n");
+                                writer.writeBulk(k);
                             }
                             writer.flush();
                         } else {
@@ -354,25 +524,11 @@ public class SimpleRedisServer {
                     break;
 
                 case "SUBSCRIBE":
+                case "PSUBSCRIBE":
                     if (commands.length >= 2) {
-                        String channel = commands[1];
-                        ClientConnection clientConn = clientConnections.get(clientId);
-
-                        // Add to channel subscriptions
-                        channelSubscriptions.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(clientConn);
-                        clientConn.subscriptions.add(channel);
-
-                        // Send subscription confirmation
-                        writer.write("*3\r\n");
-                        writer.write("$9\r\n");
-                        writer.write("subscribe\r\n");
-                        writer.write("$" + channel.length() + "\r\n");
-                        writer.write(channel + "\r\n");
-                        writer.write(":1\r\n"); // Number of subscriptions
-                        writer.flush();
-                        LOGGER.info("Client {} subscribed to channel: {}", clientId, channel);
+                        subscribe(clientConnections.get(clientId), commands, writer, command.equals("PSUBSCRIBE"));
                     } else {
-                        writer.write("-ERR wrong number of arguments for 'subscribe' command\r\n");
+                        writer.write("-ERR wrong number of arguments for '" + command.toLowerCase() + "' command\r\n");
                         writer.flush();
                     }
                     break;
@@ -382,30 +538,7 @@ public class SimpleRedisServer {
                         String channel = commands[1];
                         String message = commands[2];
 
-                        // Get subscribers for this channel
-                        List<ClientConnection> subscribers = channelSubscriptions.get(channel);
-                        int recipientCount = 0;
-
-                        if (subscribers != null) {
-                            // Send message to all subscribers
-                            // CopyOnWriteArrayList allows safe iteration without copying
-                            for (ClientConnection subscriber : subscribers) {
-                                try {
-                                    subscriber.writer.write("*3\r\n");
-                                    subscriber.writer.write("$7\r\n");
-                                    subscriber.writer.write("message\r\n");
-                                    subscriber.writer.write("$" + channel.length() + "\r\n");
-                                    subscriber.writer.write(channel + "\r\n");
-                                    subscriber.writer.write("$" + message.length() + "\r\n");
-                                    subscriber.writer.write(message + "\r\n");
-                                    subscriber.writer.flush();
-                                    recipientCount++;
-                                } catch (IOException e) {
-                                    // Remove failed subscriber
-                                    subscribers.remove(subscriber);
-                                }
-                            }
-                        }
+                        int recipientCount = publish(channel, message);
 
                         // Respond with number of recipients
                         writer.write(":" + recipientCount + "\r\n");
@@ -417,46 +550,247 @@ public class SimpleRedisServer {
                     break;
 
                 case "UNSUBSCRIBE":
-                    ClientConnection clientConn = clientConnections.get(clientId);
+                case "PUNSUBSCRIBE":
+                    unsubscribe(clientConnections.get(clientId), commands, writer, command.equals("PUNSUBSCRIBE"));
+                    break;
+
+                case "CLIENT":
+                    handleClientCommand(commands, writer, clientId);
+                    break;
+
+                case "SETBIT":
+                    if (commands.length >= 4) {
+                        int bit = Integer.parseInt(commands[3]);
+                        if (bit != 0 && bit != 1) {
+                            writer.write("-ERR bit is not an integer or out of range\r\n");
+                        } else {
+                            writer.write(":" + keyspace.setBit(commands[1], Long.parseLong(commands[2]), bit) + "\r\n");
+                        }
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'setbit' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "GETBIT":
+                    if (commands.length >= 3) {
+                        writer.write(":" + keyspace.getBit(commands[1], Long.parseLong(commands[2])) + "\r\n");
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'getbit' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "BITCOUNT":
+                    if (commands.length == 2) {
+                        writer.write(":" + keyspace.bitCount(commands[1], 0, -1) + "\r\n");
+                    } else if (commands.length == 4) {
+                        writer.write(":" + keyspace.bitCount(commands[1], Long.parseLong(commands[2]), Long.parseLong(commands[3])) + "\r\n");
+                    } else {
+                        writer.write("-ERR syntax error\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "BITOP":
+                    if (commands.length >= 4) {
+                        String operation = commands[1].toUpperCase();
+                        List<String> sources = Arrays.asList(commands).subList(3, commands.length);
+                        writer.write(":" + keyspace.bitOp(operation, commands[2], sources) + "\r\n");
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'bitop' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "PFADD":
                     if (commands.length >= 2) {
-                        String channel = commands[1];
-                        List<ClientConnection> subscribers = channelSubscriptions.get(channel);
-                        if (subscribers != null) {
-                            subscribers.remove(clientConn);
-                            if (subscribers.isEmpty()) {
-                                channelSubscriptions.remove(channel);
-                            }
+                        List<String> elements = Arrays.asList(commands).subList(2, commands.length);
+                        writer.write(":" + (keyspace.pfAdd(commands[1], elements) ? 1 : 0) + "\r\n");
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'pfadd' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "PFCOUNT":
+                    if (commands.length >= 2) {
+                        writer.write(":" + keyspace.pfCount(Arrays.asList(commands).subList(1, commands.length)) + "\r\n");
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'pfcount' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "PFMERGE":
+                    if (commands.length >= 2) {
+                        keyspace.pfMerge(commands[1], Arrays.asList(commands).subList(2, commands.length));
+                        writer.write("+OK\r\n");
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'pfmerge' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "FCALL":
+                case "FCALL_RO":
+                    if (commands.length >= 3) {
+                        int numKeys = Integer.parseInt(commands[2]);
+                        if (numKeys < 0 || 3 + numKeys > commands.length) {
+                            writer.write("-ERR Number of keys can't be greater than number of args\r\n");
+                            writer.flush();
+                            break;
                         }
-                        clientConn.subscriptions.remove(channel);
-
-                        writer.write("*3\r\n");
-                        writer.write("$11\r\n");
-                        writer.write("unsubscribe\r\n");
-                        writer.write("$" + channel.length() + "\r\n");
-                        writer.write(channel + "\r\n");
-                        writer.write(":" + clientConn.subscriptions.size() + "\r\n"); 
+                        List<String> keys = Arrays.asList(commands).subList(3, 3 + numKeys);
+                        List<String> args = Arrays.asList(commands).subList(3 + numKeys, commands.length);
+                        writeReply(writer, callFunction(database, commands[1], keys, args));
                         writer.flush();
                     } else {
-                        for (String channel : new HashSet<>(clientConn.subscriptions)) {
-                            List<ClientConnection> subscribers = channelSubscriptions.get(channel);
-                            if (subscribers != null) {
-                                subscribers.remove(clientConn);
-                                if (subscribers.isEmpty()) {
-                                    channelSubscriptions.remove(channel);
-                                }
-                            }
+                        writer.write("-ERR wrong number of arguments for 'fcall' command\r\n");
+                        writer.flush();
+                    }
+                    break;
+
+                case "LOCK.ACQUIRE":
+                    if (commands.length == 5) {
+                        long lease = Long.parseLong(commands[3]);
+                        // Waiting inside EXEC would hold the stripe the releasing client needs
+                        long timeout = conn != null && conn.executingTransaction ? 0 : Long.parseLong(commands[4]);
+                        if (lease <= 0) {
+                            writer.write("-ERR invalid lease time in 'lock.acquire' command\r\n");
+                        } else if (lockManagers[database].acquire(commands[1], commands[2], lease, timeout)) {
+                            writer.write("+OK\r\n");
+                        } else {
+                            writer.write("$-1\r\n");
+                        }
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'lock.acquire' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "LOCK.RELEASE":
+                    if (commands.length == 3) {
+                        writeReply(writer, keyspace.compareAndDelete(commands[1], commands[2]));
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'lock.release' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "LOCK.RENEW":
+                    if (commands.length == 4) {
+                        long lease = Long.parseLong(commands[3]);
+                        if (lease <= 0) {
+                            writer.write("-ERR invalid lease time in 'lock.renew' command\r\n");
+                        } else {
+                            writeReply(writer, keyspace.compareAndExpire(commands[1], commands[2], lease));
                         }
-                        int remainingSubs = clientConn.subscriptions.size();
-                        clientConn.subscriptions.clear();
-
-                        writer.write("*3\r\n");
-                        writer.write("$11\r\n");
-                        writer.write("unsubscribe\r\n");
-                        writer.write("$0\r\n");
-                        writer.write("\r\n");
-                        writer.write(":" + remainingSubs + "\r\n");
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'lock.renew' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "THROTTLE":
+                    // THROTTLE key max_burst count_per_period period_ms [quantity]
+                    if (commands.length == 5 || commands.length == 6) {
+                        long quantity = commands.length == 6 ? Long.parseLong(commands[5]) : 1;
+                        ThrottleResult result = keyspace.throttle(commands[1], Long.parseLong(commands[2]),
+                            Long.parseLong(commands[3]), Long.parseLong(commands[4]), quantity);
+                        writer.write("*5\r\n");
+                        writer.write(":" + (result.isAllowed() ? 0 : 1) + "\r\n");
+                        writer.write(":" + result.getLimit() + "\r\n");
+                        writer.write(":" + result.getRemaining() + "\r\n");
+                        writer.write(":" + result.getRetryAfterMillis() + "\r\n");
+                        writer.write(":" + result.getResetAfterMillis() + "\r\n");
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'throttle' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "SELECT":
+                    if (commands.length == 2) {
+                        int selected = getDatabaseIndex(commands[1]);
+                        if (selected < 0) {
+                            writer.write("-ERR DB index is out of range\r\n");
+                        } else {
+                            conn.database = selected;
+                            writer.write("+OK\r\n");
+                        }
+                    } else {
+                        writer.write("-ERR wrong number of arguments for 'select' command\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "INFO":
+                    writer.writeBulk(keyspaceInfo());
+                    writer.flush();
+                    break;
+
+                case "MULTI":
+                    if (conn.queuedCommands != null) {
+                        writer.write("-ERR MULTI calls can not be nested\r\n");
+                    } else {
+                        conn.queuedCommands = new ArrayList<>();
+                        conn.transactionFailed = false;
+                        writer.write("+OK\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "EXEC":
+                    if (conn.queuedCommands == null) {
+                        writer.write("-ERR EXEC without MULTI\r\n");
                         writer.flush();
+                    } else if (conn.transactionFailed) {
+                        conn.queuedCommands = null;
+                        conn.transactionFailed = false;
+                        unwatchAll(conn);
+                        writer.write("-EXECABORT Transaction discarded because of previous errors.\r\n");
+                        writer.flush();
+                    } else {
+                        execTransaction(conn, writer);
+                    }
+                    break;
+
+                case "DISCARD":
+                    if (conn.queuedCommands == null) {
+                        writer.write("-ERR DISCARD without MULTI\r\n");
+                    } else {
+                        conn.queuedCommands = null;
+                        conn.transactionFailed = false;
+                        unwatchAll(conn);
+                        writer.write("+OK\r\n");
                     }
+                    writer.flush();
+                    break;
+
+                case "WATCH":
+                    if (conn.queuedCommands != null) {
+                        writer.write("-ERR WATCH inside MULTI is not allowed\r\n");
+                    } else if (commands.length < 2) {
+                        writer.write("-ERR wrong number of arguments for 'watch' command\r\n");
+                    } else if (!conn.watchedKeys.isEmpty() && conn.watchedDatabase != conn.database) {
+                        writer.write("-ERR WATCH keys must all be in the same database\r\n");
+                    } else {
+                        conn.watchedDatabase = conn.database;
+                        for (int i = 1; i < commands.length; i++) {
+                            if (!conn.watchedKeys.containsKey(commands[i])) {
+                                conn.watchedKeys.put(commands[i], keyspace.watch(commands[i]));
+                            }
+                        }
+                        writer.write("+OK\r\n");
+                    }
+                    writer.flush();
+                    break;
+
+                case "UNWATCH":
+                    unwatchAll(conn);
+                    writer.write("+OK\r\n");
+                    writer.flush();
                     break;
 
                 default:
@@ -464,12 +798,591 @@ public class SimpleRedisServer {
                     writer.flush();
                     break;
             }
+        } catch (RedisWrongTypeException | RedisOutOfMemoryException e) {
+            writer.write("-" + e.getMessage() + "\r\n");
+            writer.flush();
         } catch (Exception e) {
             writer.write("-ERR " + e.getMessage() + "\r\n");
             writer.flush();
         }
     }
 
+    // Why a command can't be queued inside MULTI, or null if it can
+    private static String queueError(String command, int argumentCount) {
+        // EXEC locks the keys of one database, so the database can't change midway
+        // and a flush would take every stripe while EXEC already holds some of them
+        if (command.equals("SELECT") || command.equals("FLUSHDB") || command.equals("FLUSHALL")) {
+            return command + " is not allowed inside MULTI";
+        }
+        Integer arity = COMMAND_ARITY.get(command);
+        if (arity == null) {
+            return "unknown command '" + command + "'";
+        }
+        if (arity > 0 ? argumentCount != arity : argumentCount < -arity) {
+            return "wrong number of arguments for '" + command.toLowerCase() + "' command";
+        }
+        return null;
+    }
+
+    private void execTransaction(ClientConnection conn, RespWriter writer) throws IOException {
+        List<byte[][]> queued = conn.queuedCommands;
+        conn.queuedCommands = null;
+
+        // Lock the stripes of every watched key and every argument of the queued commands.
+        // Treating all arguments as potential keys over-locks a little but stays correct for any command.
+        RedisKeyspace keyspace = databases[conn.database];
+        RedisKeyspace watchedKeyspace = databases[conn.watchedDatabase];
+        Set<String> keys = new HashSet<>();
+        for (byte[][] queuedCommand : queued) {
+            for (int i = 1; i < queuedCommand.length; i++) {
+                if (queuedCommand[i] != null) {
+                    keys.add(new String(queuedCommand[i], StandardCharsets.UTF_8));
+                }
+            }
+        }
+        // Keys of one database are locked as a single sorted set; two databases are locked in index order
+        Set<String> watchedKeys = new HashSet<>(conn.watchedKeys.keySet());
+        if (watchedKeyspace == keyspace) {
+            keys.addAll(watchedKeys);
+            watchedKeys.clear();
+        }
+        boolean watchedFirst = conn.watchedDatabase < conn.database;
+
+        try (RedisKeyspace.KeyLock first = watchedFirst ? watchedKeyspace.lockKeys(watchedKeys) : keyspace.lockKeys(keys);
+             RedisKeyspace.KeyLock second = watchedFirst ? keyspace.lockKeys(keys) : watchedKeyspace.lockKeys(watchedKeys)) {
+            // Optimistic check: abort if any watched key was written since WATCH
+            for (Map.Entry<String, Long> watched : conn.watchedKeys.entrySet()) {
+                if (watchedKeyspace.version(watched.getKey()) != watched.getValue()) {
+                    writer.write("*-1\r\n");
+                    writer.flush();
+                    return;
+                }
+            }
+
+            writer.write("*" + queued.size() + "\r\n");
+            conn.executingTransaction = true;
+            for (byte[][] queuedCommand : queued) {
+                handleCommand(queuedCommand, writer, conn.clientId);
+            }
+            writer.flush();
+        } finally {
+            conn.executingTransaction = false;
+            unwatchAll(conn);
+        }
+    }
+
+    // SET key value [NX | XX] [PX milliseconds | EX seconds]
+    private void handleSet(RedisKeyspace keyspace, String[] commands, byte[] rawValue, RespWriter writer) throws IOException {
+        String key = commands[1];
+        // Text stays a String so string commands keep working on it; anything else is stored as the exact bytes
+        byte[] binaryValue = rawValue == null || isUtf8(rawValue) ? null : rawValue;
+        String value = commands[2];
+        boolean ifAbsent = false;
+        boolean ifPresent = false;
+        long ttl = 0;
+
+        for (int i = 3; i < commands.length; i++) {
+            String option = commands[i].toUpperCase();
+            if (option.equals("NX")) {
+                ifAbsent = true;
+            } else if (option.equals("XX")) {
+                ifPresent = true;
+            } else if ((option.equals("PX") || option.equals("EX")) && i + 1 < commands.length && ttl == 0) {
+                ttl = Long.parseLong(commands[++i]);
+                if (ttl <= 0) {
+                    writer.write("-ERR invalid expire time in 'set' command\r\n");
+                    writer.flush();
+                    return;
+                }
+                if (option.equals("EX")) {
+                    ttl = TimeUnit.SECONDS.toMillis(ttl);
+                }
+            } else {
+                writer.write("-ERR syntax error\r\n");
+                writer.flush();
+                return;
+            }
+        }
+        if (ifAbsent && ifPresent) {
+            writer.write("-ERR syntax error\r\n");
+            writer.flush();
+            return;
+        }
+
+        boolean written;
+        if (binaryValue != null) {
+            if (ifAbsent) {
+                written = keyspace.setIfAbsent(key, binaryValue, ttl);
+            } else if (ifPresent) {
+                written = keyspace.setIfPresent(key, binaryValue, ttl);
+            } else {
+                keyspace.set(key, binaryValue, ttl);
+                written = true;
+            }
+        } else if (ifAbsent) {
+            written = keyspace.setIfAbsent(key, value, ttl);
+        } else if (ifPresent) {
+            written = keyspace.setIfPresent(key, value, ttl);
+        } else {
+            if (ttl > 0) {
+                keyspace.set(key, value, ttl);
+            } else {
+                keyspace.set(key, value);
+            }
+            written = true;
+        }
+
+        // A skipped conditional SET replies with a null bulk string
+        writer.write(written ? "+OK\r\n" : "$-1\r\n");
+        writer.flush();
+    }
+
+    private static String[] decodeArguments(byte[][] raw) {
+        String[] arguments = new String[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            arguments[i] = raw[i] == null ? null : new String(raw[i], StandardCharsets.UTF_8);
+        }
+        return arguments;
+    }
+
+    // Strict UTF-8 check (no overlongs or surrogates), so a String round-trips to exactly these bytes
+    private static boolean isUtf8(byte[] bytes) {
+        int i = 0;
+        while (i < bytes.length) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            int continuation;
+            int min;
+            if (b >= 0xC2 && b <= 0xDF) {
+                continuation = 1;
+                min = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                continuation = 2;
+                min = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                continuation = 3;
+                min = 0x10000;
+            } else {
+                return false;
+            }
+            if (i + continuation >= bytes.length) {
+                return false;
+            }
+            int codePoint = b & (0x3F >> continuation);
+            for (int j = 1; j <= continuation; j++) {
+                int next = bytes[i + j] & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    return false;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            if (codePoint < min || codePoint > 0x10FFFF || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+                return false;
+            }
+            i += continuation + 1;
+        }
+        return true;
+    }
+
+    private void writeReply(RespWriter writer, Object reply) throws IOException {
+        if (reply == null) {
+            writer.write("$-1\r\n");
+        } else if (reply instanceof Boolean bool) {
+            writer.write(":" + (bool ? 1 : 0) + "\r\n");
+        } else if (reply instanceof Integer || reply instanceof Long || reply instanceof Short || reply instanceof Byte) {
+            writer.write(":" + ((Number) reply).longValue() + "\r\n");
+        } else if (reply instanceof byte[] bytes) {
+            writer.writeBulk(bytes);
+        } else if (reply instanceof Collection<?> elements) {
+            writer.write("*" + elements.size() + "\r\n");
+            for (Object element : elements) {
+                writeReply(writer, element);
+            }
+        } else {
+            String value = reply.toString();
+            writer.writeBulk(value);
+        }
+    }
+
+    private void unwatchAll(ClientConnection conn) {
+        RedisKeyspace keyspace = databases[conn.watchedDatabase];
+        for (String key : conn.watchedKeys.keySet()) {
+            keyspace.unwatch(key);
+        }
+        conn.watchedKeys.clear();
+    }
+
+    private void handleClientCommand(String[] commands, RespWriter writer, String clientId) throws IOException {
+        ClientConnection clientConn = clientConnections.get(clientId);
+        String subcommand = commands.length >= 2 ? commands[1].toUpperCase() : "";
+
+        switch (subcommand) {
+            case "ID":
+                writer.write(":" + clientId.substring("client-".length()) + "\r\n");
+                writer.flush();
+                break;
+
+            case "LIST":
+                StringBuilder list = new StringBuilder();
+                long now = System.currentTimeMillis();
+                for (ClientConnection client : clientConnections.values()) {
+                    list.append("id=").append(client.clientId.substring("client-".length()))
+                        .append(" addr=").append(client.address)
+                        .append(" age=").append((now - client.connectedAt) / 1000)
+                        .append(" idle=").append((now - client.lastInteraction) / 1000)
+                        .append(" sub=").append(client.subscriptions.size())
+                        .append(" psub=").append(client.patternSubscriptions.size())
+                        .append(" multi=").append(client.queuedCommands != null ? client.queuedCommands.size() : -1)
+                        .append(" watch=").append(client.watchedKeys.size())
+                        .append(" omem=").append(client.writer.getPendingBytes())
+                        .append(" tot-net-out=").append(client.writer.getTotalBytesWritten())
+                        .append(" tot-cmds=").append(client.commandCount)
+                        .append(" cmd=").append(client.lastCommand)
+                        .append(" class=").append(clientClass(client).name().toLowerCase())
+                        .append('\n');
+                }
+                writer.writeBulk(list.toString());
+                writer.flush();
+                break;
+
+            case "TRACKING":
+                if (commands.length < 3) {
+                    writer.write("-ERR wrong number of arguments for 'client|tracking' command\r\n");
+                    writer.flush();
+                    break;
+                }
+                if ("ON".equalsIgnoreCase(commands[2])) {
+                    // RESP2 has no push type, so invalidations go to a connection subscribed to __redis__:invalidate
+                    if (commands.length < 5 || !"REDIRECT".equalsIgnoreCase(commands[3])) {
+                        writer.write("-ERR CLIENT TRACKING ON requires REDIRECT to a connection subscribed to " + INVALIDATE_CHANNEL + "\r\n");
+                        writer.flush();
+                        break;
+                    }
+                    String redirect = "client-" + commands[4];
+                    if (!clientConnections.containsKey(redirect)) {
+                        writer.write("-ERR The client ID you want redirect to does not exist\r\n");
+                        writer.flush();
+                        break;
+                    }
+                    clientConn.trackingRedirect = redirect;
+                    clientConn.tracking = true;
+                } else if ("OFF".equalsIgnoreCase(commands[2])) {
+                    disableTracking(clientConn);
+                } else {
+                    writer.write("-ERR syntax error\r\n");
+                    writer.flush();
+                    break;
+                }
+                writer.write("+OK\r\n");
+                writer.flush();
+                break;
+
+            default:
+                writer.write("-ERR unknown subcommand '" + subcommand + "' for 'client' command\r\n");
+                writer.flush();
+                break;
+        }
+    }
+
+    private void trackKey(String key, ClientConnection clientConn) {
+        String target = clientConn.trackingRedirect != null ? clientConn.trackingRedirect : clientConn.clientId;
+        trackingTable.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(target);
+    }
+
+    private void disableTracking(ClientConnection clientConn) {
+        clientConn.tracking = false;
+        removeTrackingTarget(clientConn.trackingRedirect != null ? clientConn.trackingRedirect : clientConn.clientId);
+        clientConn.trackingRedirect = null;
+    }
+
+    private void removeTrackingTarget(String target) {
+        if (trackingTable.isEmpty()) {
+            return;
+        }
+        trackingTable.values().forEach(targets -> targets.remove(target));
+        trackingTable.values().removeIf(Set::isEmpty);
+    }
+
+    // Called by the keyspace after every write, delete or expiry
+    private void invalidateTrackedKey(String key) {
+        if (trackingTable.isEmpty()) {
+            return;
+        }
+        // Tracking is one-shot: the client has to read the key again to be notified of the next change
+        Set<String> targets;
+        if (key != null) {
+            targets = trackingTable.remove(key);
+            if (targets == null) {
+                return;
+            }
+        } else {
+            // Flush: every tracking client drops its whole cache
+            targets = new HashSet<>();
+            trackingTable.values().forEach(targets::addAll);
+            trackingTable.clear();
+        }
+        for (String target : targets) {
+            ClientConnection targetConn = clientConnections.get(target);
+            // Only a connection listening on the channel expects pushes; anything else would read them as replies
+            if (targetConn == null || !targetConn.subscriptions.contains(INVALIDATE_CHANNEL)) {
+                continue;
+            }
+            try {
+                targetConn.writer.push(w -> {
+                    w.write("*3\r\n");
+                    w.write("$7\r\n");
+                    w.write("message\r\n");
+                    w.writeBulk(INVALIDATE_CHANNEL);
+                    if (key != null) {
+                        w.write("*1\r\n");
+                        w.writeBulk(key);
+                    } else {
+                        w.write("*-1\r\n");
+                    }
+                });
+            } catch (IOException e) {
+                LOGGER.debug("Failed to send invalidation to {}", target, e);
+            }
+        }
+    }
+
+    /**
+     * Delivers a message to every network subscriber and in-process listener of the channel.
+     * @return number of recipients
+     */
+    public int publish(String channel, String message) {
+        // Get subscribers for this channel
+        List<ClientConnection> subscribers = channelSubscriptions.get(channel);
+        int recipientCount = 0;
+
+        if (subscribers != null) {
+            // Send message to all subscribers
+            // CopyOnWriteArrayList allows safe iteration without copying
+            for (ClientConnection subscriber : subscribers) {
+                try {
+                    subscriber.writer.push(w -> {
+                        w.write("*3\r\n");
+                        w.write("$7\r\n");
+                        w.write("message\r\n");
+                        w.writeBulk(channel);
+                        w.writeBulk(message);
+                    });
+                    recipientCount++;
+                } catch (IOException e) {
+                    // Remove failed subscriber
+                    subscribers.remove(subscriber);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<ClientConnection>> entry : patternSubscriptions.entrySet()) {
+            String pattern = entry.getKey();
+            if (!Glob.matches(pattern, channel)) {
+                continue;
+            }
+            List<ClientConnection> patternSubscribers = entry.getValue();
+            for (ClientConnection subscriber : patternSubscribers) {
+                try {
+                    subscriber.writer.push(w -> {
+                        w.write("*4\r\n");
+                        w.write("$8\r\n");
+                        w.write("pmessage\r\n");
+                        w.writeBulk(pattern);
+                        w.writeBulk(channel);
+                        w.writeBulk(message);
+                    });
+                    recipientCount++;
+                } catch (IOException e) {
+                    patternSubscribers.remove(subscriber);
+                }
+            }
+        }
+
+        List<BiConsumer<String, String>> listeners = localListeners.get(channel);
+        if (listeners != null) {
+            for (BiConsumer<String, String> listener : listeners) {
+                try {
+                    listener.accept(channel, message);
+                    recipientCount++;
+                } catch (Exception e) {
+                    LOGGER.error("Local listener for channel {} failed", channel, e);
+                }
+            }
+        }
+
+        return recipientCount;
+    }
+
+    // SUBSCRIBE/PSUBSCRIBE: one confirmation per channel, carrying the connection's total subscription count
+    private void subscribe(ClientConnection clientConn, String[] commands, RespWriter writer, boolean pattern) throws IOException {
+        Map<String, List<ClientConnection>> registry = pattern ? patternSubscriptions : channelSubscriptions;
+        Set<String> own = pattern ? clientConn.patternSubscriptions : clientConn.subscriptions;
+        String kind = pattern ? "psubscribe" : "subscribe";
+        for (int i = 1; i < commands.length; i++) {
+            String channel = commands[i];
+            if (own.add(channel)) {
+                registry.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(clientConn);
+                LOGGER.info("Client {} subscribed to {}: {}", clientConn.clientId, pattern ? "pattern" : "channel", channel);
+            }
+            writeSubscriptionReply(writer, kind, channel, clientConn);
+        }
+        writer.flush();
+    }
+
+    // UNSUBSCRIBE/PUNSUBSCRIBE without arguments drops every subscription of that kind
+    private void unsubscribe(ClientConnection clientConn, String[] commands, RespWriter writer, boolean pattern) throws IOException {
+        Map<String, List<ClientConnection>> registry = pattern ? patternSubscriptions : channelSubscriptions;
+        Set<String> own = pattern ? clientConn.patternSubscriptions : clientConn.subscriptions;
+        String kind = pattern ? "punsubscribe" : "unsubscribe";
+        List<String> channels = new ArrayList<>();
+        if (commands.length >= 2) {
+            channels.addAll(Arrays.asList(commands).subList(1, commands.length));
+        } else {
+            channels.addAll(own);
+        }
+
+        if (channels.isEmpty()) {
+            // Nothing to drop: Redis still confirms, with a null channel
+            writeSubscriptionReply(writer, kind, null, clientConn);
+        }
+        for (String channel : channels) {
+            own.remove(channel);
+            registry.computeIfPresent(channel, (k, subscribers) -> {
+                subscribers.remove(clientConn);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+            writeSubscriptionReply(writer, kind, channel, clientConn);
+        }
+        writer.flush();
+    }
+
+    private static void writeSubscriptionReply(RespWriter writer, String kind, String channel, ClientConnection clientConn) throws IOException {
+        // One frame under the writer lock, so a publisher flushing this connection can't split it
+        synchronized (writer) {
+            writer.write("*3\r\n");
+            writer.writeBulk(kind);
+            if (channel == null) {
+                writer.write("$-1\r\n");
+            } else {
+                writer.writeBulk(channel);
+            }
+            writer.write(":" + (clientConn.subscriptions.size() + clientConn.patternSubscriptions.size()) + "\r\n");
+        }
+    }
+
+    public void addLocalListener(String channel, BiConsumer<String, String> listener) {
+        localListeners.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void removeLocalListener(String channel, BiConsumer<String, String> listener) {
+        localListeners.computeIfPresent(channel, (k, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    public void registerFunction(String name, RedisFunction function) {
+        functions.put(name, function);
+    }
+
+    public void unregisterFunction(String name) {
+        functions.remove(name);
+    }
+
+    public Object callFunction(String name, List<String> keys, List<String> args) throws Exception {
+        return callFunction(0, name, keys, args);
+    }
+
+    /**
+     * Runs a registered function atomically with the stripes of its keys locked.
+     */
+    public Object callFunction(int database, String name, List<String> keys, List<String> args) throws Exception {
+        RedisFunction function = functions.get(name);
+        if (function == null) {
+            throw new IllegalArgumentException("Function not found");
+        }
+        RedisKeyspace keyspace = databases[database];
+        try (RedisKeyspace.KeyLock ignored = keyspace.lockKeys(keys)) {
+            return function.call(keyspace, keys, args);
+        }
+    }
+
+    public RedisKeyspace getKeyspace() {
+        return databases[0];
+    }
+
+    public RedisKeyspace getKeyspace(int database) {
+        return databases[database];
+    }
+
+    /**
+     * Names a database and sets its memory quota. Call before clients start using it.
+     * @param name optional name accepted by SELECT, or null
+     * @param maxMemoryBytes quota in bytes, 0 for none
+     */
+    public void configureDatabase(int database, String name, long maxMemoryBytes, EvictionPolicy policy) {
+        if (database < 0 || database >= DATABASE_COUNT) {
+            throw new IllegalArgumentException("Database index out of range: " + database);
+        }
+        if (name != null && !name.trim().isEmpty()) {
+            databaseNames.put(name.trim().toLowerCase(), database);
+        }
+        databases[database].setMemoryQuota(maxMemoryBytes, policy);
+    }
+
+    /**
+     * Resolves a database index or configured name.
+     * @return the index, or -1 if there is no such database
+     */
+    public int getDatabaseIndex(String nameOrIndex) {
+        Integer named = databaseNames.get(nameOrIndex.trim().toLowerCase());
+        if (named != null) {
+            return named;
+        }
+        try {
+            int index = Integer.parseInt(nameOrIndex.trim());
+            return index >= 0 && index < DATABASE_COUNT ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Per-database statistics in the INFO keyspace format, extended with memory and eviction figures.
+     */
+    public String keyspaceInfo() {
+        Map<Integer, String> names = new HashMap<>();
+        databaseNames.forEach((name, index) -> names.put(index, name));
+
+        StringBuilder info = new StringBuilder("# Keyspace\r\n");
+        for (int i = 0; i < DATABASE_COUNT; i++) {
+            RedisKeyspace db = databases[i];
+            if (db.size() == 0 && db.getMaxMemory() == 0 && !names.containsKey(i)) {
+                continue;
+            }
+            info.append("db").append(i).append(":keys=").append(db.size())
+                .append(",expires=").append(db.getExpiringKeyCount())
+                .append(",used_memory=").append(db.getUsedMemory())
+                .append(",maxmemory=").append(db.getMaxMemory())
+                .append(",maxmemory_policy=").append(db.getEvictionPolicy().getName())
+                .append(",evicted_keys=").append(db.getEvictedKeys())
+                .append(",keyspace_hits=").append(db.getHits())
+                .append(",keyspace_misses=").append(db.getMisses());
+            if (names.containsKey(i)) {
+                info.append(",name=").append(names.get(i));
+            }
+            info.append("\r\n");
+        }
+        return info.toString();
+    }
+
+    public boolean checkPassword(String providedPassword) {
+        return password == null || password.trim().isEmpty() || password.equals(providedPassword);
+    }
+
     public void stop() {
         running = false;
         try {
@@ -480,6 +1393,26 @@ public class SimpleRedisServer {
             LOGGER.error("Error closing server socket", e);
         }
 
+        try {
+            if (unixServerChannel != null) {
+                unixServerChannel.close();
+                Files.deleteIfExists(unixSocketPath);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error closing unix socket", e);
+        }
+
+        // Blocking socket reads ignore interrupts, so close the connections to end their handlers
+        for (ClientConnection client : clientConnections.values()) {
+            client.writer.close();
+        }
+
+        for (LockManager locks : lockManagers) {
+            if (locks != null) {
+                locks.shutdown();
+            }
+        }
+
         if (scheduledTaskService != null) {
             scheduledTaskService.shutdownNow();
         }
@@ -491,6 +1424,37 @@ public class SimpleRedisServer {
         LOGGER.info("Simple Redis server stopped");
     }
 
+    /**
+     * Fair, blocking lock acquisition, as LOCK.ACQUIRE. Used by {@link LocalRedisClient}.
+     */
+    boolean acquireLock(int database, String key, String token, long leaseMillis, long timeoutMillis) throws InterruptedException {
+        LockManager locks = lockManagers[database];
+        if (locks == null) {
+            throw new IllegalStateException("Redis server is not running");
+        }
+        return locks.acquire(key, token, leaseMillis, timeoutMillis);
+    }
+
+    /**
+     * Sets the output buffer limit for a client class. Zero disables the hard or soft limit.
+     */
+    public void setOutputBufferLimit(ClientClass clientClass, long hardBytes, long softBytes, long softSeconds) {
+        OutputBufferLimit limit = new OutputBufferLimit(hardBytes, softBytes, TimeUnit.SECONDS.toMillis(softSeconds));
+        if (clientClass == ClientClass.PUBSUB) {
+            pubsubOutputLimit = limit;
+        } else {
+            normalOutputLimit = limit;
+        }
+    }
+
+    private static ClientClass clientClass(ClientConnection client) {
+        return client.subscriptions.isEmpty() && client.patternSubscriptions.isEmpty() ? ClientClass.NORMAL : ClientClass.PUBSUB;
+    }
+
+    private OutputBufferLimit outputBufferLimit(ClientConnection client) {
+        return clientClass(client) == ClientClass.PUBSUB ? pubsubOutputLimit : normalOutputLimit;
+    }
+
     public boolean isRunning() {
         return running;
     }
@@ -498,4 +1462,8 @@ public class SimpleRedisServer {
     public int getPort() {
         return port;
     }
+
+    public Path getUnixSocketPath() {
+        return unixSocketPath;
+    }
 }
\ No newline at end of file
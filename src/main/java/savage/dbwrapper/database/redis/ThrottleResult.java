@@ -0,0 +1,55 @@
+package savage.dbwrapper.database.redis;
+
+/**
+ * Outcome of a THROTTLE call.
+ */
+public class ThrottleResult {
+    private final boolean limited;
+    private final long limit;
+    private final long remaining;
+    private final long retryAfterMillis;
+    private final long resetAfterMillis;
+
+    ThrottleResult(boolean limited, long limit, long remaining, long retryAfterMillis, long resetAfterMillis) {
+        this.limited = limited;
+        this.limit = limit;
+        this.remaining = remaining;
+        this.retryAfterMillis = retryAfterMillis;
+        this.resetAfterMillis = resetAfterMillis;
+    }
+
+    public boolean isAllowed() {
+        return !limited;
+    }
+
+    /**
+     * Maximum number of requests allowed in a burst (max_burst + 1).
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * Time until the same request would be allowed, or -1 if it was allowed (or can never be).
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Time until the limiter is completely drained.
+     */
+    public long getResetAfterMillis() {
+        return resetAfterMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ThrottleResult{allowed=" + !limited + ", limit=" + limit + ", remaining=" + remaining
+            + ", retryAfterMillis=" + retryAfterMillis + ", resetAfterMillis=" + resetAfterMillis + "}";
+    }
+}
@@ -62,7 +62,7 @@ public class ConfigLoader {
         }
     }
 
-    private static String generateRandomPassword(int length) {
+    public static String generateRandomPassword(int length) {
         StringBuilder sb = new StringBuilder(length);
         for (int i = 0; i < length; i++) {
             sb.append(ALLOWED_CHARACTERS.charAt(RANDOM.nextInt(ALLOWED_CHARACTERS.length())));
@@ -7,16 +7,26 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class ProcessUtils {
     private static final Logger LOGGER = LoggerFactory.getLogger(ProcessUtils.class);
 
     public static void logProcessOutput(Process process, String processName) {
+        logProcessOutput(process, processName, null);
+    }
+
+    /**
+     * Logs the process's output like {@link #logProcessOutput(Process, String)} and also hands every line,
+     * from either stream, to {@code lineListener} on the pumping thread, e.g. to spot a startup message.
+     */
+    public static void logProcessOutput(Process process, String processName, Consumer<String> lineListener) {
         new Thread(() -> {
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
                     LOGGER.info("[" + processName + "] " + line);
+                    notifyListener(lineListener, processName, line);
                 }
             } catch (IOException e) {
                 if (!"Stream closed".equals(e.getMessage())) {
@@ -30,6 +40,7 @@ public class ProcessUtils {
                 String line;
                 while ((line = reader.readLine()) != null) {
                     LOGGER.error("[" + processName + " ERROR] " + line);
+                    notifyListener(lineListener, processName, line);
                 }
             } catch (IOException e) {
                 if (!"Stream closed".equals(e.getMessage())) {
@@ -39,6 +50,18 @@ public class ProcessUtils {
         }).start();
     }
 
+    private static void notifyListener(Consumer<String> lineListener, String processName, String line) {
+        if (lineListener == null) {
+            return;
+        }
+        try {
+            lineListener.accept(line);
+        } catch (RuntimeException e) {
+            // Keep pumping, or the process blocks once its pipe fills up
+            LOGGER.error("Output listener for " + processName + " failed", e);
+        }
+    }
+
     public static boolean waitForProcess(Process process, long timeout, TimeUnit unit) {
         try {
             return process.waitFor(timeout, unit);